@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2013-2016 markiewb.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    markiewb - initial API and implementation and/or initial documentation
+ */
+package de.markiewb.netbeans.plugins.eclipse.formatter;
+
+import de.markiewb.netbeans.plugins.eclipse.formatter.strategies.FormatterWarmUp;
+import de.markiewb.netbeans.plugins.eclipse.formatter.strategies.eclipse.ConfigSnapshotStore;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.openide.modules.OnStart;
+import org.openide.modules.Places;
+import org.openide.util.RequestProcessor;
+
+/**
+ * Restores the config snapshots of the last session and warms up the formatter
+ * in the background.
+ *
+ * @author markiewb
+ */
+@OnStart
+public class FormatterStartup implements Runnable {
+
+    private static final Logger LOG = Logger.getLogger(FormatterStartup.class.getName());
+    private static final RequestProcessor RP = new RequestProcessor(FormatterStartup.class.getName());
+
+    @Override
+    public void run() {
+        ConfigSnapshotStore.getDefault().setDirectory(Places.getCacheSubdirectory("eclipseformatter/snapshots"));
+        RP.post(new Runnable() {
+
+            @Override
+            public void run() {
+                int restored = ConfigSnapshotStore.getDefault().restore();
+                LOG.log(Level.FINE, "{0} config snapshots restored", restored);
+                FormatterWarmUp.getDefault().start();
+            }
+        }, 0, Thread.MIN_PRIORITY);
+    }
+}
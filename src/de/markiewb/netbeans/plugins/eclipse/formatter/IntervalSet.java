@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2013-2016 markiewb.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    markiewb - initial API and implementation and/or initial documentation
+ */
+package de.markiewb.netbeans.plugins.eclipse.formatter;
+
+import java.util.Arrays;
+
+/**
+ * Sorted set of half-open intervals <code>[start, end)</code> backed by two
+ * <code>int</code> arrays. Overlapping and adjacent intervals are merged when
+ * they are added, so the set always holds the minimal number of intervals.
+ *
+ * @author markiewb
+ */
+public final class IntervalSet {
+
+    private int[] starts;
+    private int[] ends;
+    private int size;
+
+    public IntervalSet() {
+        this(8);
+    }
+
+    public IntervalSet(int initialCapacity) {
+        starts = new int[Math.max(1, initialCapacity)];
+        ends = new int[starts.length];
+    }
+
+    /**
+     * Adds the interval and merges it with all intervals it overlaps or
+     * touches.
+     */
+    public void add(int start, int end) {
+        if (end < start) {
+            throw new IllegalArgumentException("end " + end + " < start " + start);
+        }
+        //first interval, which could be merged
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (ends[mid] < start) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        int last = low;
+        while (last < size && starts[last] <= end) {
+            start = Math.min(start, starts[last]);
+            end = Math.max(end, ends[last]);
+            last++;
+        }
+        final int merged = last - low;
+        if (0 == merged) {
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+            }
+            System.arraycopy(starts, low, starts, low + 1, size - low);
+            System.arraycopy(ends, low, ends, low + 1, size - low);
+            size++;
+        } else if (merged > 1) {
+            System.arraycopy(starts, last, starts, low + 1, size - last);
+            System.arraycopy(ends, last, ends, low + 1, size - last);
+            size -= merged - 1;
+        }
+        starts[low] = start;
+        ends[low] = end;
+    }
+
+    /**
+     * Moves all positions greater than <code>position</code> by
+     * <code>count</code>, like inserting <code>count</code> elements after
+     * <code>position</code>. An interval containing the position grows.
+     */
+    public void insert(int position, int count) {
+        for (int i = size - 1; i >= 0 && ends[i] > position; i--) {
+            if (starts[i] > position) {
+                starts[i] += count;
+            }
+            ends[i] += count;
+        }
+    }
+
+    /**
+     * Collapses the positions <code>(position, position + count]</code> onto
+     * <code>position</code> and moves all greater positions back by
+     * <code>count</code>, like removing <code>count</code> elements after
+     * <code>position</code>. Intervals, which become empty, are dropped.
+     */
+    public void remove(int position, int count) {
+        int target = 0;
+        for (int i = 0; i < size; i++) {
+            final int start = starts[i] <= position ? starts[i] : Math.max(position, starts[i] - count);
+            final int end = ends[i] <= position ? ends[i] : Math.max(position, ends[i] - count);
+            if (start == end) {
+                continue;
+            }
+            if (target > 0 && ends[target - 1] >= start) {
+                ends[target - 1] = Math.max(ends[target - 1], end);
+                continue;
+            }
+            starts[target] = start;
+            ends[target] = end;
+            target++;
+        }
+        size = target;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return 0 == size;
+    }
+
+    public int getStart(int index) {
+        checkIndex(index);
+        return starts[index];
+    }
+
+    public int getEnd(int index) {
+        checkIndex(index);
+        return ends[index];
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("IntervalSet{");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append('[').append(starts[i]).append(", ").append(ends[i]).append(')');
+        }
+        return sb.append('}').toString();
+    }
+}
@@ -12,9 +12,16 @@
 package de.markiewb.netbeans.plugins.eclipse.formatter;
 
 import de.markiewb.netbeans.plugins.eclipse.formatter.strategies.eclipse.EclipseFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import javax.swing.Icon;
 import javax.swing.text.Document;
 import org.netbeans.api.annotations.common.StaticResource;
+import org.netbeans.api.project.Project;
+import org.netbeans.api.project.ProjectUtils;
+import org.netbeans.api.project.SourceGroup;
+import org.netbeans.api.project.Sources;
 import org.netbeans.modules.editor.NbEditorUtilities;
 import org.openide.util.ImageUtilities;
 
@@ -28,8 +35,39 @@ public class Utilities {
     public static Icon iconEclipse = ImageUtilities.image2Icon(ImageUtilities.loadImage(ECLIPSE));
     public static Icon iconNetBeans = ImageUtilities.image2Icon(ImageUtilities.loadImage(NETBEANS));
 
+    /**
+     * Copied from org.netbeans.modules.maven.classpath.MavenSourcesImpl. These
+     * constants where not public API, so they are duplicated in here.
+     * https://github.com/markiewb/nb-resource-hyperlink-at-cursor/issues/9
+     */
+    public static final String MAVEN_TYPE_OTHER = "Resources"; //NOI18N
+    public static final String MAVEN_TYPE_TEST_OTHER = "TestResources"; //NOI18N
+    public static final String MAVEN_TYPE_GEN_SOURCES = "GeneratedSources"; //NOI18N
+
+    /**
+     * http://bits.netbeans.org/dev/javadoc/org-netbeans-modules-java-project/constant-values.html#org.netbeans.api.java.project.SOURCES_HINT_TEST
+     *
+     */
+    public static final String SOURCES_HINT_MAIN = "main";
+    public static final String SOURCES_HINT_TEST = "test";
+    public static final String SOURCES_TYPE_JAVA = "java";
+    public static final String SOURCES_TYPE_RESOURCES = "resources";
+
     public static boolean isJava(Document document) {
         return "text/x-java".equals(NbEditorUtilities.getMimeType(document));
     }
 
+    public static List<SourceGroup> getAllSourceGroups(Project p) {
+        final Sources sources = ProjectUtils.getSources(p);
+        List<SourceGroup> list = new ArrayList<SourceGroup>();
+        list.addAll(Arrays.asList(sources.getSourceGroups(SOURCES_TYPE_JAVA)));
+        list.addAll(Arrays.asList(sources.getSourceGroups(SOURCES_TYPE_RESOURCES)));
+        list.addAll(Arrays.asList(sources.getSourceGroups(SOURCES_HINT_TEST)));
+        list.addAll(Arrays.asList(sources.getSourceGroups(SOURCES_HINT_MAIN)));
+        list.addAll(Arrays.asList(sources.getSourceGroups(MAVEN_TYPE_GEN_SOURCES)));
+        list.addAll(Arrays.asList(sources.getSourceGroups(MAVEN_TYPE_OTHER)));
+        list.addAll(Arrays.asList(sources.getSourceGroups(MAVEN_TYPE_TEST_OTHER)));
+        return list;
+    }
+
 }
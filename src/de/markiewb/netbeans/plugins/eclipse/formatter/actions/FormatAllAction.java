@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2013-2016 markiewb.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    markiewb - initial API and implementation and/or initial documentation
+ */
+package de.markiewb.netbeans.plugins.eclipse.formatter.actions;
+
+import de.markiewb.netbeans.plugins.eclipse.formatter.Utilities;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.List;
+import org.netbeans.api.project.FileOwnerQuery;
+import org.netbeans.api.project.Project;
+import org.netbeans.api.project.SourceGroup;
+import org.openide.awt.ActionID;
+import org.openide.awt.ActionReference;
+import org.openide.awt.ActionReferences;
+import org.openide.awt.ActionRegistration;
+import org.openide.filesystems.FileObject;
+import org.openide.loaders.DataObject;
+import org.openide.util.NbBundle;
+
+/**
+ * Formats all Java files of the selected projects, packages and folders. For a
+ * project the source groups are formatted, not the whole project directory.
+ *
+ * @author markiewb
+ */
+@ActionID(
+        category = "Source",
+        id = "de.markiewb.netbeans.plugins.eclipse.formatter.actions.FormatAllAction")
+@ActionRegistration(
+        displayName = "#CTL_FormatAll")
+@ActionReferences({
+    @ActionReference(path = "Projects/Actions", position = 1100),
+    @ActionReference(path = "Loaders/folder/any/Actions", position = 1100)
+})
+@NbBundle.Messages("CTL_FormatAll=Format All Java Files with Eclipse formatter")
+public class FormatAllAction implements ActionListener {
+
+    private final List<DataObject> context;
+
+    public FormatAllAction(List<DataObject> context) {
+        this.context = context;
+    }
+
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        List<FileObject> roots = new ArrayList<>();
+        for (DataObject dataObject : context) {
+            final FileObject folder = dataObject.getPrimaryFile();
+            if (null == folder || !folder.isFolder()) {
+                continue;
+            }
+            Project project = FileOwnerQuery.getOwner(folder);
+            if (null != project && folder.equals(project.getProjectDirectory())) {
+                for (SourceGroup sourceGroup : Utilities.getAllSourceGroups(project)) {
+                    if (null != sourceGroup.getRootFolder()) {
+                        roots.add(sourceGroup.getRootFolder());
+                    }
+                }
+            } else {
+                roots.add(folder);
+            }
+        }
+        if (!roots.isEmpty()) {
+            new FormatAllTask(roots).start();
+        }
+    }
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright (c) 2013-2016 markiewb.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    markiewb - initial API and implementation and/or initial documentation
+ */
+package de.markiewb.netbeans.plugins.eclipse.formatter.actions;
+
+import de.markiewb.netbeans.plugins.eclipse.formatter.strategies.FormattingContext;
+import de.markiewb.netbeans.plugins.eclipse.formatter.strategies.FormattingContextCache;
+import de.markiewb.netbeans.plugins.eclipse.formatter.strategies.eclipse.ConfigFileWatcher;
+import de.markiewb.netbeans.plugins.eclipse.formatter.strategies.eclipse.EclipseFormatter;
+import de.markiewb.netbeans.plugins.eclipse.formatter.strategies.eclipse.FormatIndex;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.Document;
+import org.eclipse.text.edits.TextEdit;
+import org.netbeans.api.progress.ProgressHandle;
+import org.netbeans.api.progress.ProgressHandleFactory;
+import org.netbeans.api.project.FileOwnerQuery;
+import org.netbeans.api.queries.FileEncodingQuery;
+import org.openide.awt.StatusDisplayer;
+import org.openide.filesystems.FileLock;
+import org.openide.filesystems.FileObject;
+import org.openide.loaders.DataObject;
+import org.openide.modules.Places;
+import org.openide.util.Cancellable;
+import org.openide.util.RequestProcessor;
+
+/**
+ * Formats the Java files below the given folders in parallel. The files are
+ * grouped by the fingerprint of their effective configuration, so projects
+ * with equal settings share one group. The groups are handed to the workers
+ * one after the other in slices, so the workers format with the same warm,
+ * pooled formatter as long as possible. The result is written back under a
+ * {@link FileLock}; files with unsaved changes are skipped. Files, which the
+ * {@link FormatIndex} knows to be formatted, are not formatted again.
+ *
+ * @author markiewb
+ */
+final class FormatAllTask implements Runnable, Cancellable {
+
+    private static final Logger LOG = Logger.getLogger(FormatAllTask.class.getName());
+    private static final RequestProcessor RP = new RequestProcessor(FormatAllTask.class.getName(), 1, true);
+    private static final int WORKER_COUNT = Runtime.getRuntime().availableProcessors();
+    private static final RequestProcessor WORKERS = new RequestProcessor(FormatAllTask.class.getName() + ".workers", WORKER_COUNT, true);
+    /**
+     * Opened and saved in {@link #RP}, but read and updated concurrently by
+     * the {@link #WORKERS}, which relies on {@link FormatIndex} being thread
+     * safe.
+     */
+    private static FormatIndex index;
+
+    private final List<FileObject> roots;
+    private final AtomicInteger processed = new AtomicInteger();
+    private final AtomicInteger changed = new AtomicInteger();
+    private final AtomicInteger skipped = new AtomicInteger();
+    private final AtomicInteger upToDate = new AtomicInteger();
+    private volatile boolean cancelled;
+    private ProgressHandle handle;
+
+    FormatAllTask(List<FileObject> roots) {
+        this.roots = roots;
+    }
+
+    void start() {
+        RP.post(this);
+    }
+
+    @Override
+    public void run() {
+        handle = ProgressHandleFactory.createHandle("Formatting Java files with Eclipse formatter", this);
+        handle.start();
+        final long start = System.nanoTime();
+        if (null == index) {
+            index = FormatIndex.open(Places.getCacheSubfile("eclipseformatter/format.index"));
+        }
+        try {
+            final Map<FormattingContext, List<FileObject>> groups = collect();
+            int total = 0;
+            Map<Long, Bucket> buckets = new LinkedHashMap<>();
+            for (Map.Entry<FormattingContext, List<FileObject>> group : groups.entrySet()) {
+                final FormattingContext context = group.getKey();
+                total += group.getValue().size();
+                if (!isFormattable(context)) {
+                    skipped.addAndGet(group.getValue().size());
+                    continue;
+                }
+                final long fingerprint = context.formatter.getConfigFingerprint();
+                Bucket bucket = buckets.get(fingerprint);
+                if (null == bucket) {
+                    bucket = new Bucket(context, fingerprint);
+                    buckets.put(fingerprint, bucket);
+                }
+                bucket.files.addAll(group.getValue());
+            }
+            List<Callable<Void>> tasks = new ArrayList<>();
+            int formattable = 0;
+            for (Bucket bucket : buckets.values()) {
+                formattable += bucket.files.size();
+                //several slices per worker to balance files of different size
+                final int slice = Math.max(1, bucket.files.size() / (WORKER_COUNT * 4));
+                for (int i = 0; i < bucket.files.size(); i += slice) {
+                    tasks.add(bucket.slice(i, Math.min(i + slice, bucket.files.size())));
+                }
+            }
+            handle.switchToDeterminate(Math.max(1, formattable));
+            WORKERS.invokeAll(tasks);
+            final String msg = String.format("%s %s of %s Java files in %s ms (%s up to date, %s skipped)",
+                    cancelled ? "Cancelled, formatted" : "Formatted", changed.get(), total, (System.nanoTime() - start) / 1000000, upToDate.get(), skipped.get());
+            StatusDisplayer.getDefault().setStatusText(msg);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                index.save();
+            } catch (IOException ex) {
+                LOG.log(Level.FINE, "Could not write the format index", ex);
+            }
+            handle.finish();
+        }
+    }
+
+    @Override
+    public boolean cancel() {
+        cancelled = true;
+        return true;
+    }
+
+    /**
+     * @return the Java files grouped by the configuration of their project
+     */
+    private Map<FormattingContext, List<FileObject>> collect() {
+        Set<FileObject> files = new LinkedHashSet<>();
+        for (FileObject root : roots) {
+            Enumeration<? extends FileObject> children = root.getChildren(true);
+            while (children.hasMoreElements() && !cancelled) {
+                FileObject child = children.nextElement();
+                if (child.isData() && "java".equalsIgnoreCase(child.getExt())) {
+                    files.add(child);
+                }
+            }
+        }
+        Map<FormattingContext, List<FileObject>> groups = new LinkedHashMap<>();
+        for (FileObject file : files) {
+            final FormattingContext context = FormattingContextCache.getDefault().get(FileOwnerQuery.getOwner(file));
+            List<FileObject> group = groups.get(context);
+            if (null == group) {
+                group = new ArrayList<>();
+                groups.put(context, group);
+            }
+            group.add(file);
+        }
+        return groups;
+    }
+
+    private boolean isFormattable(FormattingContext context) {
+        if (!context.eclipseFormatterEnabled || null == context.formatter || !ConfigFileWatcher.getDefault().watch(context.formatterFile)) {
+            return false;
+        }
+        try {
+            //fail once per configuration, not per file
+            context.formatter.prepare();
+            return true;
+        } catch (RuntimeException ex) {
+            LOG.log(Level.WARNING, "Could not load configuration " + context.formatterFile, ex);
+            return false;
+        }
+    }
+
+    private void format(FileObject file, FormattingContext context, long fingerprint) {
+        try {
+            if (DataObject.find(file).isModified()) {
+                //do not overwrite the changes in the editor
+                skipped.incrementAndGet();
+                return;
+            }
+            final String key = file.getPath();
+            if (index.isFormatted(key, file.getSize(), file.lastModified().getTime(), fingerprint)) {
+                upToDate.incrementAndGet();
+                return;
+            }
+            final byte[] bytes = file.asBytes();
+            final long hash = FormatIndex.hash(bytes);
+            if (index.isFormatted(key, hash, fingerprint)) {
+                index.put(key, bytes.length, file.lastModified().getTime(), hash, fingerprint, true);
+                upToDate.incrementAndGet();
+                return;
+            }
+            final Charset encoding = FileEncodingQuery.getEncoding(file);
+            final String code;
+            try {
+                //a lenient decoder would write replacement characters back
+                code = encoding.newDecoder()
+                        .onMalformedInput(CodingErrorAction.REPORT)
+                        .onUnmappableCharacter(CodingErrorAction.REPORT)
+                        .decode(ByteBuffer.wrap(bytes)).toString();
+            } catch (CharacterCodingException ex) {
+                LOG.log(Level.WARNING, "{0} is not encoded in {1}, it is not formatted", new Object[]{file.getPath(), encoding.name()});
+                skipped.incrementAndGet();
+                return;
+            }
+            if (EclipseFormatter.hasGuardedBlocks(code)) {
+                LOG.log(Level.INFO, "{0} contains guarded blocks of the GUI builder, it is not formatted", file.getPath());
+                skipped.incrementAndGet();
+                return;
+            }
+            final TextEdit edit = context.formatter.computeEdits(code, 0, code.length(), null);
+            if (null == edit) {
+                //not recorded, so that it is not taken as formatted next time
+                LOG.log(Level.WARNING, "{0} cannot be parsed, it is not formatted", file.getPath());
+                skipped.incrementAndGet();
+                return;
+            }
+            final Document document = new Document(code);
+            edit.apply(document);
+            final String formatted = document.get();
+            if (formatted.equals(code)) {
+                index.put(key, bytes.length, file.lastModified().getTime(), hash, fingerprint, true);
+                return;
+            }
+            if (cancelled) {
+                return;
+            }
+            final byte[] content = formatted.getBytes(encoding);
+            FileLock lock = file.lock();
+            try {
+                OutputStream out = file.getOutputStream(lock);
+                try {
+                    out.write(content);
+                } finally {
+                    out.close();
+                }
+            } finally {
+                lock.releaseLock();
+            }
+            changed.incrementAndGet();
+            index.put(key, content.length, file.lastModified().getTime(), FormatIndex.hash(content), fingerprint, true);
+        } catch (IOException | BadLocationException | RuntimeException ex) {
+            LOG.log(Level.WARNING, "Could not format " + file.getPath(), ex);
+            skipped.incrementAndGet();
+        } catch (StackOverflowError ex) {
+            //JDT recurses along the nesting of the code
+            LOG.log(Level.WARNING, "{0} is too deeply nested to be formatted", file.getPath());
+            skipped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Files with the same effective configuration.
+     */
+    private final class Bucket {
+
+        final FormattingContext context;
+        final long fingerprint;
+        final List<FileObject> files = new ArrayList<>();
+
+        Bucket(FormattingContext context, long fingerprint) {
+            this.context = context;
+            this.fingerprint = fingerprint;
+        }
+
+        Callable<Void> slice(final int start, final int end) {
+            return new Callable<Void>() {
+
+                @Override
+                public Void call() {
+                    for (int i = start; i < end && !cancelled; i++) {
+                        final FileObject file = files.get(i);
+                        format(file, context, fingerprint);
+                        handle.progress(file.getNameExt(), processed.incrementAndGet());
+                    }
+                    return null;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2013-2016 markiewb.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    markiewb - initial API and implementation and/or initial documentation
+ */
+package de.markiewb.netbeans.plugins.eclipse.formatter.cli;
+
+import de.markiewb.netbeans.plugins.eclipse.formatter.strategies.eclipse.EclipseFormatter;
+import de.markiewb.netbeans.plugins.eclipse.formatter.strategies.eclipse.FormatIndex;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.Document;
+import org.eclipse.text.edits.TextEdit;
+
+/**
+ * Formats files on all cores. The files of all buckets are put in a row, which
+ * is split recursively, so idle workers steal the remaining halves of busy
+ * ones. As the halves are contiguous, a worker mostly formats files of one
+ * bucket in a row with the same warm, pooled formatter.
+ * <p>
+ * A file is only written, if the formatting changed it; the new content is
+ * written to a temporary file, which then replaces the file. In check mode no
+ * file is written, only the lines of the changed regions are collected.
+ * <p>
+ * Files, which the {@link FormatIndex} knows to be formatted, are neither
+ * formatted nor checked.
+ *
+ * @author markiewb
+ */
+final class BatchFormatter {
+
+    private final Charset encoding;
+    private final boolean check;
+    private final FormatIndex index;
+    private final AtomicInteger changed = new AtomicInteger();
+    private final AtomicInteger upToDate = new AtomicInteger();
+    private final SortedMap<Path, int[]> unformatted = new ConcurrentSkipListMap<>();
+    private final SortedMap<Path, String> skipped = new ConcurrentSkipListMap<>();
+    private final SortedMap<Path, String> errors = new ConcurrentSkipListMap<>();
+
+    /**
+     * @param check if <code>true</code>, the files are only checked
+     * @param index the index to consult and update or <code>null</code>
+     */
+    BatchFormatter(Charset encoding, boolean check, FormatIndex index) {
+        this.encoding = encoding;
+        this.check = check;
+        this.index = index;
+    }
+
+    void formatAll(List<Bucket> buckets) {
+        int count = 0;
+        for (Bucket bucket : buckets) {
+            count += bucket.files.size();
+        }
+        Path[] files = new Path[count];
+        Bucket[] owners = new Bucket[count];
+        int i = 0;
+        for (Bucket bucket : buckets) {
+            for (Path file : bucket.files) {
+                files[i] = file;
+                owners[i++] = bucket;
+            }
+        }
+        new ForkJoinPool().invoke(new FormatFiles(files, owners, 0, count));
+    }
+
+    /**
+     * Counts a file, which is not formatted at all.
+     */
+    void skip(Path file, String reason) {
+        skipped.put(file, reason);
+    }
+
+    /**
+     * Counts a file, which cannot be formatted at all.
+     */
+    void fail(Path file, String message) {
+        errors.put(file, message);
+    }
+
+    int getChanged() {
+        return changed.get();
+    }
+
+    /**
+     * @return the reason by skipped file
+     */
+    SortedMap<Path, String> getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * @return number of files known to be formatted by the index
+     */
+    int getUpToDate() {
+        return upToDate.get();
+    }
+
+    /**
+     * @return the lines of the changed regions by file, only filled in check
+     * mode
+     */
+    SortedMap<Path, int[]> getUnformatted() {
+        return unformatted;
+    }
+
+    SortedMap<Path, String> getErrors() {
+        return errors;
+    }
+
+    private void format(Path file, Bucket bucket) {
+        final EclipseFormatter formatter = bucket.formatter;
+        final long configFingerprint = bucket.fingerprint;
+        try {
+            final String key = file.toAbsolutePath().normalize().toString();
+            BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            if (null != index && index.isFormatted(key, attrs.size(), attrs.lastModifiedTime().toMillis(), configFingerprint)) {
+                upToDate.incrementAndGet();
+                return;
+            }
+            final byte[] bytes = Files.readAllBytes(file);
+            final long hash = null != index ? FormatIndex.hash(bytes) : 0;
+            if (null != index && index.isFormatted(key, hash, configFingerprint)) {
+                //only touched, remember the new modification time
+                index.put(key, attrs.size(), attrs.lastModifiedTime().toMillis(), hash, configFingerprint, true);
+                upToDate.incrementAndGet();
+                return;
+            }
+            final String code = encoding.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(ByteBuffer.wrap(bytes)).toString();
+            if (EclipseFormatter.hasGuardedBlocks(code)) {
+                //not formatted in the IDE either
+                skipped.put(file, "guarded blocks of the GUI builder");
+                return;
+            }
+            if (check) {
+                final int[] offsets = formatter.findChanges(code);
+                if (offsets.length > 0) {
+                    unformatted.put(file, toLines(code, offsets));
+                    changed.incrementAndGet();
+                }
+                record(key, attrs, hash, configFingerprint, 0 == offsets.length);
+                return;
+            }
+            final TextEdit edit = formatter.computeEdits(code, 0, code.length(), null);
+            if (null == edit) {
+                errors.put(file, "cannot be parsed");
+                return;
+            }
+            final Document document = new Document(code);
+            edit.apply(document);
+            final String formatted = document.get();
+            if (formatted.equals(code)) {
+                record(key, attrs, hash, configFingerprint, true);
+                return;
+            }
+            final byte[] content = formatted.getBytes(encoding);
+            write(file, content);
+            changed.incrementAndGet();
+            if (null != index) {
+                record(key, Files.readAttributes(file, BasicFileAttributes.class), FormatIndex.hash(content), configFingerprint, true);
+            }
+        } catch (CharacterCodingException ex) {
+            errors.put(file, "not encoded in " + encoding.name());
+        } catch (IOException | BadLocationException | RuntimeException ex) {
+            errors.put(file, ex.toString());
+        } catch (StackOverflowError ex) {
+            //JDT recurses along the nesting of the code
+            errors.put(file, "too deeply nested to be formatted");
+        }
+    }
+
+    /**
+     * @param offsets ascending offsets
+     * @return the 1-based lines of the offsets
+     */
+    static int[] toLines(String code, int[] offsets) {
+        int[] lines = new int[offsets.length];
+        int line = 1;
+        int position = 0;
+        for (int i = 0; i < offsets.length; i++) {
+            for (; position < offsets[i]; position++) {
+                final char c = code.charAt(position);
+                if ('\n' == c || '\r' == c && (position + 1 == code.length() || '\n' != code.charAt(position + 1))) {
+                    line++;
+                }
+            }
+            lines[i] = line;
+        }
+        return lines;
+    }
+
+    private void record(String key, BasicFileAttributes attrs, long hash, long configFingerprint, boolean formatted) {
+        if (null != index) {
+            index.put(key, attrs.size(), attrs.lastModifiedTime().toMillis(), hash, configFingerprint, formatted);
+        }
+    }
+
+    private static void write(Path file, byte[] content) throws IOException {
+        final Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, content);
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private final class FormatFiles extends RecursiveAction {
+
+        private final Path[] files;
+        private final Bucket[] owners;
+        private final int start;
+        private final int end;
+
+        FormatFiles(Path[] files, Bucket[] owners, int start, int end) {
+            this.files = files;
+            this.owners = owners;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start == 1) {
+                format(files[start], owners[start]);
+            } else if (end - start > 1) {
+                final int middle = (start + end) >>> 1;
+                invokeAll(new FormatFiles(files, owners, start, middle), new FormatFiles(files, owners, middle, end));
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2013-2016 markiewb.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    markiewb - initial API and implementation and/or initial documentation
+ */
+package de.markiewb.netbeans.plugins.eclipse.formatter.cli;
+
+import de.markiewb.netbeans.plugins.eclipse.formatter.strategies.eclipse.EclipseFormatter;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Files with the same effective configuration.
+ *
+ * @author markiewb
+ */
+final class Bucket {
+
+    final EclipseFormatter formatter;
+    final long fingerprint;
+    final List<Path> files = new ArrayList<>();
+
+    Bucket(EclipseFormatter formatter, long fingerprint) {
+        this.formatter = formatter;
+        this.fingerprint = fingerprint;
+    }
+}
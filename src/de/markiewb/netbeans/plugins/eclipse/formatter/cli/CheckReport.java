@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2013-2016 markiewb.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    markiewb - initial API and implementation and/or initial documentation
+ */
+package de.markiewb.netbeans.plugins.eclipse.formatter.cli;
+
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Writes the result of a check as JSON, for example
+ * <pre>
+ * {"checked":2,"unformatted":1,"upToDate":0,"skipped":0,"failed":0,"millis":120,
+ *  "files":[{"path":"src/A.java","regions":2,"lines":[3,7]}],
+ *  "skippedFiles":[],"errors":[]}
+ * </pre>
+ *
+ * @author markiewb
+ */
+final class CheckReport {
+
+    private CheckReport() {
+    }
+
+    static void write(PrintStream out, BatchFormatter batch, int checked, long millis) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"checked\":").append(checked)
+                .append(",\"unformatted\":").append(batch.getUnformatted().size())
+                .append(",\"upToDate\":").append(batch.getUpToDate())
+                .append(",\"skipped\":").append(batch.getSkipped().size())
+                .append(",\"failed\":").append(batch.getErrors().size())
+                .append(",\"millis\":").append(millis)
+                .append(",\"files\":[");
+        String separator = "";
+        for (Map.Entry<Path, int[]> file : batch.getUnformatted().entrySet()) {
+            final int[] lines = file.getValue();
+            sb.append(separator).append("{\"path\":");
+            string(sb, file.getKey().toString());
+            sb.append(",\"regions\":").append(lines.length).append(",\"lines\":[");
+            for (int i = 0; i < lines.length; i++) {
+                sb.append(0 == i ? "" : ",").append(lines[i]);
+            }
+            sb.append("]}");
+            separator = ",";
+        }
+        sb.append("],\"skippedFiles\":[");
+        files(sb, batch.getSkipped(), "reason");
+        sb.append("],\"errors\":[");
+        files(sb, batch.getErrors(), "message");
+        sb.append("]}");
+        out.println(sb);
+    }
+
+    private static void files(StringBuilder sb, Map<Path, String> files, String name) {
+        String separator = "";
+        for (Map.Entry<Path, String> file : files.entrySet()) {
+            sb.append(separator).append("{\"path\":");
+            string(sb, file.getKey().toString());
+            sb.append(",\"").append(name).append("\":");
+            string(sb, file.getValue());
+            sb.append('}');
+            separator = ",";
+        }
+    }
+
+    private static void string(StringBuilder sb, String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2013-2016 markiewb.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    markiewb - initial API and implementation and/or initial documentation
+ */
+package de.markiewb.netbeans.plugins.eclipse.formatter.cli;
+
+import de.markiewb.netbeans.plugins.eclipse.formatter.strategies.eclipse.EclipseFormatter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resolves the effective configuration of the files and groups the files by
+ * its fingerprint. With <code>--project-settings</code> the settings of the
+ * nearest enclosing Eclipse project are used, otherwise and for files outside
+ * of a project the configuration given by <code>--config</code>. Each
+ * configuration file is loaded once, projects with equal settings end up in
+ * the same bucket.
+ *
+ * @author markiewb
+ */
+final class ConfigResolver {
+
+    private static final String PROJECT_SETTINGS = ".settings/org.eclipse.jdt.core.prefs";
+    private static final Path NONE = Paths.get("");
+
+    private final Options options;
+    /**
+     * Project settings by directory, {@link #NONE} if there are none.
+     */
+    private final Map<Path, Path> settingsByDirectory = new HashMap<>();
+    private final Map<Path, Bucket> bucketsByConfig = new HashMap<>();
+    private final Map<Long, Bucket> buckets = new LinkedHashMap<>();
+    private final Map<Path, String> failures = new LinkedHashMap<>();
+
+    ConfigResolver(Options options) {
+        this.options = options;
+    }
+
+    /**
+     * @return the files grouped by configuration; files without a
+     * configuration are counted as skipped, files with a configuration, which
+     * cannot be loaded, as failed
+     */
+    List<Bucket> resolve(List<Path> files, BatchFormatter batch) {
+        for (Path file : files) {
+            final Path config = findConfig(file);
+            if (null == config) {
+                batch.skip(file, "no configuration");
+                continue;
+            }
+            final Bucket bucket = getBucket(config);
+            if (null == bucket) {
+                batch.fail(file, "Could not load configuration " + config);
+                continue;
+            }
+            bucket.files.add(file);
+        }
+        return new ArrayList<>(buckets.values());
+    }
+
+    /**
+     * @return the configuration files, which could not be loaded, and the
+     * reason
+     */
+    Map<Path, String> getFailures() {
+        return failures;
+    }
+
+    private Path findConfig(Path file) {
+        if (options.projectSettings) {
+            final Path settings = findProjectSettings(file.toAbsolutePath().getParent());
+            if (null != settings) {
+                return settings;
+            }
+        }
+        return options.config;
+    }
+
+    private Path findProjectSettings(Path dir) {
+        List<Path> visited = new ArrayList<>();
+        Path result = null;
+        for (Path current = dir; null != current; current = current.getParent()) {
+            final Path known = settingsByDirectory.get(current);
+            if (null != known) {
+                result = known;
+                break;
+            }
+            visited.add(current);
+            final Path settings = current.resolve(PROJECT_SETTINGS);
+            if (Files.isRegularFile(settings)) {
+                result = settings;
+                break;
+            }
+        }
+        if (null == result) {
+            result = NONE;
+        }
+        for (Path current : visited) {
+            settingsByDirectory.put(current, result);
+        }
+        return NONE == result ? null : result;
+    }
+
+    private Bucket getBucket(Path config) {
+        if (failures.containsKey(config)) {
+            return null;
+        }
+        Bucket bucket = bucketsByConfig.get(config);
+        if (null != bucket) {
+            return bucket;
+        }
+        final String file = config.toString();
+        final String profile = EclipseFormatter.isProjectSetting(file) ? "" : options.profile;
+        final EclipseFormatter formatter = new EclipseFormatter(file, profile, options.lineFeed, options.sourceLevel);
+        final long fingerprint;
+        try {
+            formatter.prepare();
+            fingerprint = formatter.getConfigFingerprint();
+        } catch (RuntimeException ex) {
+            failures.put(config, (null != ex.getCause() ? ex.getCause() : ex).getMessage());
+            return null;
+        }
+        bucket = buckets.get(fingerprint);
+        if (null == bucket) {
+            bucket = new Bucket(formatter, fingerprint);
+            buckets.put(fingerprint, bucket);
+        }
+        bucketsByConfig.put(config, bucket);
+        return bucket;
+    }
+}
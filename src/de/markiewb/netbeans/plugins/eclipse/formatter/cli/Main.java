@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2013-2016 markiewb.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    markiewb - initial API and implementation and/or initial documentation
+ */
+package de.markiewb.netbeans.plugins.eclipse.formatter.cli;
+
+import de.markiewb.netbeans.plugins.eclipse.formatter.strategies.eclipse.FormatIndex;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Command line formatter, which formats the Java files with the same engine
+ * as the IDE. Built by the <code>cli-jar</code> target.
+ *
+ * @author markiewb
+ */
+public final class Main {
+
+    static final int EXIT_OK = 0;
+    static final int EXIT_ERROR = 1;
+    static final int EXIT_USAGE = 2;
+    static final int EXIT_UNFORMATTED = 3;
+
+    public static void main(String[] args) {
+        System.exit(run(args, System.out, System.err));
+    }
+
+    static int run(String[] args, PrintStream out, PrintStream err) {
+        final Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException ex) {
+            err.println(ex.getMessage());
+            err.println(Options.USAGE);
+            return EXIT_USAGE;
+        }
+        final List<Path> files;
+        try {
+            files = collect(options.paths);
+        } catch (IOException ex) {
+            err.println(ex);
+            return EXIT_ERROR;
+        }
+        final long start = System.nanoTime();
+        final FormatIndex index = null != options.index ? FormatIndex.open(options.index.toFile()) : null;
+        BatchFormatter batch = new BatchFormatter(options.encoding, options.check, index);
+        final ConfigResolver resolver = new ConfigResolver(options);
+        final List<Bucket> buckets = resolver.resolve(files, batch);
+        for (Map.Entry<Path, String> failure : resolver.getFailures().entrySet()) {
+            err.println("Could not load configuration " + failure.getKey() + ": " + failure.getValue());
+        }
+        if (!options.projectSettings && !resolver.getFailures().isEmpty()) {
+            return EXIT_ERROR;
+        }
+        batch.formatAll(buckets);
+        if (null != index) {
+            try {
+                index.save();
+            } catch (IOException ex) {
+                err.println("Could not write index " + options.index + ": " + ex);
+            }
+        }
+        final long millis = (System.nanoTime() - start) / 1000000;
+        if (options.check) {
+            CheckReport.write(out, batch, files.size(), millis);
+        } else {
+            for (Map.Entry<Path, String> error : batch.getErrors().entrySet()) {
+                err.println(error.getKey() + ": " + error.getValue());
+            }
+            out.println(String.format("Formatted %s of %s files with %s configurations in %s ms (%s up to date, %s skipped, %s failed)",
+                    batch.getChanged(), files.size(), buckets.size(), millis, batch.getUpToDate(), batch.getSkipped().size(), batch.getErrors().size()));
+        }
+        if (!batch.getErrors().isEmpty()) {
+            return EXIT_ERROR;
+        }
+        return batch.getUnformatted().isEmpty() ? EXIT_OK : EXIT_UNFORMATTED;
+    }
+
+    /**
+     * @return the given files and the Java files below the given directories,
+     * sorted and without duplicates
+     */
+    static List<Path> collect(List<Path> paths) throws IOException {
+        final Set<Path> files = new TreeSet<>();
+        for (Path path : paths) {
+            if (Files.isDirectory(path)) {
+                Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        if (attrs.isRegularFile() && file.getFileName().toString().endsWith(".java")) {
+                            files.add(file);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } else if (Files.isRegularFile(path)) {
+                files.add(path);
+            } else {
+                throw new IOException(path + " does not exist");
+            }
+        }
+        return new ArrayList<>(files);
+    }
+}
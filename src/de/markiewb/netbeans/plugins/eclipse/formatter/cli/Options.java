@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2013-2016 markiewb.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    markiewb - initial API and implementation and/or initial documentation
+ */
+package de.markiewb.netbeans.plugins.eclipse.formatter.cli;
+
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The parsed command line arguments.
+ *
+ * @author markiewb
+ */
+final class Options {
+
+    static final String USAGE = "Usage: java -jar eclipse-formatter-cli.jar --config <file> | --project-settings [options] <file or directory>...\n"
+            + "  --config <file>        Eclipse formatter XML, Workspace Mechanic (*.epf) or org.eclipse.jdt.core.prefs file\n"
+            + "  --project-settings     use the .settings/org.eclipse.jdt.core.prefs of the enclosing Eclipse project,\n"
+            + "                         --config is used for files outside of a project\n"
+            + "  --profile <name>       profile of the XML file\n"
+            + "  --source-level <level> source level like 1.8\n"
+            + "  --linefeed <separator> \\n, \\r or \\r\\n, default is the separator of each file\n"
+            + "  --encoding <charset>   encoding of the sources, default is UTF-8\n"
+            + "  --index <file>         remember the formatted files in the file and skip them,\n"
+            + "                         until they or the configuration change\n"
+            + "  --check                report the unformatted files as JSON without writing them,\n"
+            + "                         the exit code is 3 if a file is not formatted";
+
+    Path config;
+    boolean projectSettings;
+    String profile = "";
+    String sourceLevel = "";
+    String lineFeed = "";
+    Charset encoding = Charset.forName("UTF-8");
+    boolean check;
+    Path index;
+    final List<Path> paths = new ArrayList<>();
+
+    /**
+     * @throws IllegalArgumentException if the arguments are invalid
+     */
+    static Options parse(String[] args) {
+        Options options = new Options();
+        for (int i = 0; i < args.length; i++) {
+            final String arg = args[i];
+            switch (arg) {
+                case "--config":
+                    options.config = Paths.get(value(args, ++i, arg));
+                    break;
+                case "--project-settings":
+                    options.projectSettings = true;
+                    break;
+                case "--profile":
+                    options.profile = value(args, ++i, arg);
+                    break;
+                case "--source-level":
+                    options.sourceLevel = value(args, ++i, arg);
+                    break;
+                case "--linefeed":
+                    options.lineFeed = value(args, ++i, arg);
+                    break;
+                case "--encoding":
+                    options.encoding = Charset.forName(value(args, ++i, arg));
+                    break;
+                case "--index":
+                    options.index = Paths.get(value(args, ++i, arg));
+                    break;
+                case "--check":
+                    options.check = true;
+                    break;
+                default:
+                    if (arg.startsWith("--")) {
+                        throw new IllegalArgumentException("Unknown option " + arg);
+                    }
+                    options.paths.add(Paths.get(arg));
+            }
+        }
+        if (null == options.config && !options.projectSettings) {
+            throw new IllegalArgumentException("--config or --project-settings is missing");
+        }
+        if (options.paths.isEmpty()) {
+            throw new IllegalArgumentException("No files or directories given");
+        }
+        return options;
+    }
+
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Value of " + option + " is missing");
+        }
+        return args[index];
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2013-2016 markiewb.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    markiewb - initial API and implementation and/or initial documentation
+ */
+package de.markiewb.netbeans.plugins.eclipse.formatter.onsave;
+
+import de.markiewb.netbeans.plugins.eclipse.formatter.IntervalSet;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+
+/**
+ * Records the lines of a document, which have been modified since the last
+ * save. The line ranges are coalesced and moved while the edits happen, so
+ * converting them to offsets at save time only depends on the number of merged
+ * ranges.
+ *
+ * @author markiewb
+ */
+final class DirtyLineTracker implements DocumentListener {
+
+    private final Document document;
+    private final IntervalSet lines = new IntervalSet();
+
+    private DirtyLineTracker(Document document) {
+        this.document = document;
+    }
+
+    /**
+     * @return the tracker attached to the document or <code>null</code>
+     */
+    static DirtyLineTracker get(Document document) {
+        return (DirtyLineTracker) document.getProperty(DirtyLineTracker.class);
+    }
+
+    /**
+     * Attaches a new tracker to the document, which records the modifications
+     * from now on.
+     */
+    static DirtyLineTracker attach(Document document) {
+        DirtyLineTracker tracker = new DirtyLineTracker(document);
+        document.putProperty(DirtyLineTracker.class, tracker);
+        document.addDocumentListener(tracker);
+        return tracker;
+    }
+
+    /**
+     * Stops recording the modifications of the document.
+     */
+    void detach() {
+        document.removeDocumentListener(this);
+        document.putProperty(DirtyLineTracker.class, null);
+    }
+
+    /**
+     * @return the offsets of the modified lines, each range starts at the line
+     * break in front of its first line
+     */
+    synchronized IntervalSet getChangedRegions() {
+        final Element root = document.getDefaultRootElement();
+        final int lineCount = root.getElementCount();
+        IntervalSet regions = new IntervalSet(Math.max(1, lines.size()));
+        for (int i = 0; i < lines.size(); i++) {
+            final int startLine = Math.min(lines.getStart(i), lineCount - 1);
+            final int endLine = lines.getEnd(i);
+            final int start = Math.max(0, root.getElement(startLine).getStartOffset() - 1);
+            final int end = endLine < lineCount ? root.getElement(endLine).getStartOffset() : document.getLength();
+            regions.add(start, Math.max(start, end));
+        }
+        return regions;
+    }
+
+    synchronized void reset() {
+        lines.clear();
+    }
+
+    @Override
+    public synchronized void insertUpdate(DocumentEvent e) {
+        final Element root = document.getDefaultRootElement();
+        final int line = root.getElementIndex(e.getOffset());
+        final int added = addedLines(e, root);
+        if (added > 0) {
+            lines.insert(line, added);
+        }
+        lines.add(line, line + added + 1);
+    }
+
+    @Override
+    public synchronized void removeUpdate(DocumentEvent e) {
+        final Element root = document.getDefaultRootElement();
+        final int line = root.getElementIndex(e.getOffset());
+        final int removed = -addedLines(e, root);
+        if (removed > 0) {
+            lines.remove(line, removed);
+        }
+        lines.add(line, line + 1);
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e) {
+        //attributes only
+    }
+
+    private static int addedLines(DocumentEvent e, Element root) {
+        DocumentEvent.ElementChange change = e.getChange(root);
+        if (null == change) {
+            return 0;
+        }
+        return change.getChildrenAdded().length - change.getChildrenRemoved().length;
+    }
+}
@@ -11,18 +11,14 @@
  */
 package de.markiewb.netbeans.plugins.eclipse.formatter.onsave;
 
-import de.markiewb.netbeans.plugins.eclipse.formatter.Pair;
+import de.markiewb.netbeans.plugins.eclipse.formatter.IntervalSet;
 import de.markiewb.netbeans.plugins.eclipse.formatter.strategies.ParameterObject;
 import de.markiewb.netbeans.plugins.eclipse.formatter.strategies.FormatterStrategyDispatcher;
-import static de.markiewb.netbeans.plugins.eclipse.formatter.options.Preferences.ENABLE_SAVEACTION;
-import static de.markiewb.netbeans.plugins.eclipse.formatter.options.Preferences.ENABLE_SAVEACTION_MODIFIEDLINESONLY;
+import de.markiewb.netbeans.plugins.eclipse.formatter.strategies.FormattingContext;
+import de.markiewb.netbeans.plugins.eclipse.formatter.strategies.FormattingContextCache;
 import static de.markiewb.netbeans.plugins.eclipse.formatter.options.Preferences.FEATURE_formatChangedLinesOnly;
-import static de.markiewb.netbeans.plugins.eclipse.formatter.options.Preferences.getActivePreferences;
-import java.util.SortedSet;
-import java.util.TreeSet;
+import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.prefs.Preferences;
-import javax.swing.text.BadLocationException;
 import javax.swing.text.Element;
 import javax.swing.text.JTextComponent;
 import javax.swing.text.StyledDocument;
@@ -30,20 +26,21 @@ import org.netbeans.api.editor.EditorRegistry;
 import org.netbeans.api.editor.mimelookup.MimeRegistration;
 import org.netbeans.spi.editor.document.OnSaveTask;
 import org.openide.text.NbDocument;
-import org.openide.util.Exceptions;
 
 public class FormatOnSaveTask implements OnSaveTask {
 
     private static final Logger LOG = Logger.getLogger(FormatOnSaveTask.class.getName());
 
     private final Context context;
+    private volatile ParameterObject running;
+    private volatile boolean cancelled;
 
     private FormatOnSaveTask(Context context) {
         this.context = context;
     }
 
-    public SortedSet<Pair> getChangedLines(Context context1, StyledDocument doc) {
-        final SortedSet<Pair> changedElements = new TreeSet<>();
+    public IntervalSet getChangedLines(Context context1, StyledDocument doc) {
+        final IntervalSet changedElements = new IntervalSet();
         Element root = context1.getModificationsRootElement();
         for (int i = 0; i < root.getElementCount(); i++) {
             Element e = root.getElement(i);
@@ -59,14 +56,11 @@ public class FormatOnSaveTask implements OnSaveTask {
             int start = NbDocument.findLineOffset(doc, startLine) - 1;
             int end = NbDocument.findLineOffset(doc, endLine);
 
-            try {
+            if (LOG.isLoggable(Level.FINEST)) {
                 LOG.finest(String.format("Offset %s-%s -> Line %s-%s -> Offset %s-%s", startOffset, endOffset, startLine, endLine, start, end));
-                LOG.finest("\n\"" + doc.getText(start, end - start) + "\"\n");
-            } catch (BadLocationException ex) {
-                Exceptions.printStackTrace(ex);
             }
 
-            changedElements.add(Pair.of(start, end));
+            changedElements.add(start, end);
         }
         return changedElements;
     }
@@ -74,17 +68,29 @@ public class FormatOnSaveTask implements OnSaveTask {
     @Override
     public void performTask() {
         final StyledDocument styledDoc = (StyledDocument) this.context.getDocument();
-        Preferences pref = getActivePreferences(styledDoc);
-
-        final boolean enableSaveAction = pref.getBoolean(ENABLE_SAVEACTION, false);
-        final boolean modifiedLinesOnly = pref.getBoolean(ENABLE_SAVEACTION_MODIFIEDLINESONLY, false);
-        if (enableSaveAction) {
+        final FormattingContext formattingContext = FormattingContextCache.getDefault().get(styledDoc);
+
+        final boolean enableSaveAction = formattingContext.enableSaveAction;
+        final boolean modifiedLinesOnly = formattingContext.modifiedLinesOnly;
+        final boolean trackLines = enableSaveAction && modifiedLinesOnly && FEATURE_formatChangedLinesOnly;
+        DirtyLineTracker tracker = DirtyLineTracker.get(styledDoc);
+        if (null != tracker && !trackLines) {
+            tracker.detach();
+            tracker = null;
+        }
+        if (enableSaveAction && !cancelled) {
             JTextComponent editor = EditorRegistry.lastFocusedComponent();
             int caret = (null != editor) ? editor.getCaretPosition() : -1;
             final boolean isSaveAction = true;
-            SortedSet<Pair> changedElements = null;
-            if (modifiedLinesOnly && FEATURE_formatChangedLinesOnly) {
-                changedElements = getChangedLines(context, styledDoc);
+            IntervalSet changedElements = null;
+            if (trackLines) {
+                if (null != tracker) {
+                    changedElements = tracker.getChangedRegions();
+                } else {
+                    //the edits before the first save are only known to the context
+                    changedElements = getChangedLines(context, styledDoc);
+                    tracker = DirtyLineTracker.attach(styledDoc);
+                }
             }
 
             ParameterObject po = new ParameterObject();
@@ -95,8 +101,19 @@ public class FormatOnSaveTask implements OnSaveTask {
             po.selectionEnd = -1;
             po.caret = caret;
             po.editor = editor;
+            po.timeBudget = formattingContext.saveActionTimeBudget;
 
-            new FormatterStrategyDispatcher().format(po);
+            running = po;
+            po.cancelled = cancelled;
+            try {
+                new FormatterStrategyDispatcher().format(po);
+            } finally {
+                running = null;
+            }
+        }
+        if (null != tracker) {
+            //the document is saved including the formatted lines, also if the formatting was cancelled
+            tracker.reset();
         }
     }
 
@@ -107,6 +124,12 @@ public class FormatOnSaveTask implements OnSaveTask {
 
     @Override
     public boolean cancel() {
+        cancelled = true;
+        ParameterObject po = running;
+        if (null != po) {
+            //the strategy stops waiting for the formatter and saves unformatted
+            po.cancelled = true;
+        }
         return true;
     }
 
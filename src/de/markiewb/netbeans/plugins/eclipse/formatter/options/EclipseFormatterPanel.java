@@ -24,8 +24,8 @@ import static de.markiewb.netbeans.plugins.eclipse.formatter.options.Preferences
 import static de.markiewb.netbeans.plugins.eclipse.formatter.options.Preferences.LINEFEED;
 import static de.markiewb.netbeans.plugins.eclipse.formatter.options.Preferences.SOURCELEVEL;
 import de.markiewb.netbeans.plugins.eclipse.formatter.xml.ConfigReadException;
-import de.markiewb.netbeans.plugins.eclipse.formatter.xml.ConfigReader;
-import de.markiewb.netbeans.plugins.eclipse.formatter.xml.Profile;
+import de.markiewb.netbeans.plugins.eclipse.formatter.xml.ProfileHeader;
+import de.markiewb.netbeans.plugins.eclipse.formatter.xml.ProfileHeaderIndex;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.File;
@@ -48,7 +48,6 @@ import org.openide.filesystems.FileObject;
 import org.openide.filesystems.FileUtil;
 import org.openide.util.Exceptions;
 import org.openide.util.NbBundle;
-import org.xml.sax.SAXException;
 
 @Keywords(location = "Java", tabTitle = "Eclipse Formatter", keywords = {"eclipse", "format", "eclipse formatter"})
 public class EclipseFormatterPanel extends javax.swing.JPanel implements VerifiableConfigPanel {
@@ -531,11 +530,11 @@ public class EclipseFormatterPanel extends javax.swing.JPanel implements Verifia
 
                 //only xml configurations contain profiles
                 if (de.markiewb.netbeans.plugins.eclipse.formatter.options.Preferences.isXMLConfigurationFile(fo.getNameExt())) {
-                    List<Profile> profiles = new ConfigReader().read(file);
+                    List<ProfileHeader> profiles = ProfileHeaderIndex.getDefault().getHeaders(file);
                     cbProfile.addItem(Bundle.ChooseProfile());
 
                     String entryToSelect = null;
-                    for (Profile profile : profiles) {
+                    for (ProfileHeader profile : profiles) {
                         cbProfile.addItem(profile.getName());
                         if (activeProfile != null && activeProfile.equals(profile.getName())) {
                             entryToSelect = profile.getName();
@@ -545,13 +544,13 @@ public class EclipseFormatterPanel extends javax.swing.JPanel implements Verifia
                     cbProfile.setEnabled(true);
                     lblProfile.setEnabled(true);
                 }
-            } catch (IOException | SAXException | ConfigReadException ex) {
+            } catch (IOException | ConfigReadException ex) {
                 Exceptions.printStackTrace(ex);
             }
         }
     }
 
-    private void selectProfileOrFallback(String entryToSelect, List<Profile> profiles) {
+    private void selectProfileOrFallback(String entryToSelect, List<ProfileHeader> profiles) {
         if (null != entryToSelect) {
             cbProfile.setSelectedItem(entryToSelect);
         } else if (profiles.size() == 1) {
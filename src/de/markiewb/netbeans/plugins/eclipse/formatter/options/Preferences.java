@@ -11,6 +11,7 @@
 package de.markiewb.netbeans.plugins.eclipse.formatter.options;
 
 import de.markiewb.netbeans.plugins.eclipse.formatter.options.EclipseFormatterPanel;
+import de.markiewb.netbeans.plugins.eclipse.formatter.strategies.eclipse.EclipseFormatter;
 import javax.swing.text.StyledDocument;
 import org.netbeans.api.project.FileOwnerQuery;
 import org.netbeans.api.project.Project;
@@ -52,10 +53,32 @@ public class Preferences {
      * @since 1.10
      */
     public static final String SOURCELEVEL = "sourcelevel";
+    /**
+     * Milliseconds the save action may spend on formatting, <code>0</code>
+     * for no limit.
+     *
+     * @since 1.11
+     */
+    public static final String SAVEACTION_TIME_BUDGET = "saveActionTimeBudget";
+    public static final int DEFAULT_SAVEACTION_TIME_BUDGET = 2000;
+    /**
+     * Format very large compilation units in parallel chunks.
+     *
+     * @since 1.11
+     */
+    public static final String CHUNKED_FORMATTING = "chunkedFormatting";
 
     public static java.util.prefs.Preferences getActivePreferences(final StyledDocument styledDoc) {
-        java.util.prefs.Preferences globalPreferences = NbPreferences.forModule(EclipseFormatterPanel.class);
         Project project = FileOwnerQuery.getOwner(NbEditorUtilities.getDataObject(styledDoc).getPrimaryFile());
+        return getActivePreferences(project);
+    }
+
+    /**
+     * @param project the project or <code>null</code> for the global
+     * preferences
+     */
+    public static java.util.prefs.Preferences getActivePreferences(final Project project) {
+        java.util.prefs.Preferences globalPreferences = NbPreferences.forModule(EclipseFormatterPanel.class);
         if (null != project) {
 //            NotificationDisplayer.getDefault().notify("Project", null, "" + project, null);
             java.util.prefs.Preferences projectPreferences = ProjectUtils.getPreferences(project, EclipseFormatterPanel.class, true);
@@ -70,34 +93,18 @@ public class Preferences {
     }
 
     public static boolean isWorkspaceMechanicFile(String filename) {
-        return filename.endsWith("epf");
+        return EclipseFormatter.isWorkspaceMechanicFile(filename);
     }
 
     public static boolean isXMLConfigurationFile(String filename) {
-        return filename.endsWith("xml");
+        return EclipseFormatter.isXMLConfigurationFile(filename);
     }
 
     public static boolean isProjectSetting(String filename) {
-        return filename.endsWith("org.eclipse.jdt.core.prefs");
+        return EclipseFormatter.isProjectSetting(filename);
     }
 
     public static String getLineFeed(String lineFeedSetting) {
-        final boolean usePlatformLinefeed = null == lineFeedSetting || "".equals(lineFeedSetting);
-        String linefeed = null;
-        if (!usePlatformLinefeed) {
-
-            switch (lineFeedSetting) {
-                case "\\n":
-                    linefeed = org.netbeans.editor.BaseDocument.LS_LF;
-                    break;
-                case "\\r":
-                    linefeed = org.netbeans.editor.BaseDocument.LS_CR;
-                    break;
-                case "\\r\\n":
-                    linefeed = org.netbeans.editor.BaseDocument.LS_CRLF;
-                    break;
-            }
-        }
-        return linefeed;
+        return EclipseFormatter.getLineFeed(lineFeedSetting);
     }
 }
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2013-2016 markiewb.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    markiewb - initial API and implementation and/or initial documentation
+ */
+package de.markiewb.netbeans.plugins.eclipse.formatter.strategies;
+
+import static de.markiewb.netbeans.plugins.eclipse.formatter.options.Preferences.PROJECT_PREF_FILE;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import org.openide.filesystems.FileChangeAdapter;
+import org.openide.filesystems.FileEvent;
+import org.openide.filesystems.FileObject;
+import org.openide.filesystems.FileRenameEvent;
+import org.openide.filesystems.FileUtil;
+
+/**
+ * Finds the config file, which applies to a project directory. Starting at
+ * the project directory the directories are walked up, so that modules of a
+ * multi-module project find the config of their aggregator. In each directory
+ * <code>.settings/org.eclipse.jdt.core.prefs</code> is preferred over a
+ * workspace mechanic file (<code>*.epf</code>). The walk stops below the user
+ * home directory.
+ * <p>
+ * The result is remembered for each directory on the way. The memo is dropped,
+ * when a <code>.settings</code> folder, a prefs file or an <code>*.epf</code>
+ * file is created, deleted or renamed in one of these directories.
+ *
+ * @author markiewb
+ */
+public final class FormatterConfigLocator {
+
+    private static final String SETTINGS_FOLDER = ".settings";
+    private static final String NONE = "";
+    private static final FormatterConfigLocator INSTANCE = new FormatterConfigLocator();
+
+    public static FormatterConfigLocator getDefault() {
+        return INSTANCE;
+    }
+
+    private final Map<FileObject, String> memo = new WeakHashMap<>();
+    private final Set<File> listenedDirectories = new HashSet<>();
+    private final Listener listener = new Listener();
+    private long generation;
+    private File userHome;
+
+    FormatterConfigLocator() {
+    }
+
+    /**
+     * @param directory the project directory
+     * @return the path of the nearest config file or <code>null</code>
+     */
+    public String find(FileObject directory) {
+        final long walkGeneration;
+        synchronized (memo) {
+            String path = memo.get(directory);
+            if (null != path) {
+                return NONE.equals(path) ? null : path;
+            }
+            walkGeneration = generation;
+        }
+        List<FileObject> visited = new ArrayList<>();
+        String result = null;
+        for (FileObject dir = directory; null != dir && !isStop(dir); dir = dir.getParent()) {
+            synchronized (memo) {
+                String path = memo.get(dir);
+                if (null != path) {
+                    result = NONE.equals(path) ? null : path;
+                    break;
+                }
+            }
+            visited.add(dir);
+            listen(dir);
+            result = findInDirectory(dir);
+            if (null != result) {
+                break;
+            }
+        }
+        synchronized (memo) {
+            //do not remember what has been found while files changed
+            if (walkGeneration == generation) {
+                for (FileObject dir : visited) {
+                    memo.put(dir, null == result ? NONE : result);
+                }
+            }
+        }
+        return result;
+    }
+
+    public void clear() {
+        synchronized (memo) {
+            generation++;
+            memo.clear();
+        }
+    }
+
+    private static String findInDirectory(FileObject dir) {
+        FileObject prefs = dir.getFileObject(SETTINGS_FOLDER + "/" + PROJECT_PREF_FILE);
+        if (null != prefs && prefs.isData()) {
+            return prefs.getPath();
+        }
+        FileObject epf = null;
+        for (FileObject child : dir.getChildren()) {
+            if (child.isData() && isWorkspaceMechanicFile(child.getNameExt())
+                    && (null == epf || child.getNameExt().compareTo(epf.getNameExt()) < 0)) {
+                epf = child;
+            }
+        }
+        return null != epf ? epf.getPath() : null;
+    }
+
+    private static boolean isWorkspaceMechanicFile(String name) {
+        return name.endsWith(".epf");
+    }
+
+    private boolean isStop(FileObject dir) {
+        if (dir.isRoot()) {
+            return true;
+        }
+        final File file = FileUtil.toFile(dir);
+        if (null == file) {
+            return true;
+        }
+        synchronized (memo) {
+            if (null == userHome) {
+                userHome = FileUtil.normalizeFile(new File(System.getProperty("user.home")));
+            }
+            return userHome.equals(file);
+        }
+    }
+
+    private void listen(FileObject dir) {
+        final File file = FileUtil.toFile(dir);
+        synchronized (memo) {
+            if (null == file || !listenedDirectories.add(file)) {
+                return;
+            }
+        }
+        //the listener covers the direct children of the directories
+        FileUtil.addFileChangeListener(listener, file);
+        FileUtil.addFileChangeListener(listener, new File(file, SETTINGS_FOLDER));
+    }
+
+    private void changed(FileEvent fe) {
+        final String name = fe.getFile().getNameExt();
+        if (fe instanceof FileRenameEvent || SETTINGS_FOLDER.equals(name) || PROJECT_PREF_FILE.equals(name) || isWorkspaceMechanicFile(name)) {
+            clear();
+            FormattingContextCache.getDefault().clear();
+        }
+    }
+
+    private final class Listener extends FileChangeAdapter {
+
+        @Override
+        public void fileFolderCreated(FileEvent fe) {
+            changed(fe);
+        }
+
+        @Override
+        public void fileDataCreated(FileEvent fe) {
+            changed(fe);
+        }
+
+        @Override
+        public void fileDeleted(FileEvent fe) {
+            changed(fe);
+        }
+
+        @Override
+        public void fileRenamed(FileRenameEvent fe) {
+            changed(fe);
+        }
+    }
+}
@@ -12,24 +12,13 @@
 package de.markiewb.netbeans.plugins.eclipse.formatter.strategies;
 
 import de.markiewb.netbeans.plugins.eclipse.formatter.Utilities;
+import de.markiewb.netbeans.plugins.eclipse.formatter.strategies.eclipse.ConfigFileWatcher;
 import de.markiewb.netbeans.plugins.eclipse.formatter.strategies.eclipse.EclipseFormatter;
 import de.markiewb.netbeans.plugins.eclipse.formatter.strategies.eclipse.EclipseFormatter.CannotLoadConfigurationException;
 import de.markiewb.netbeans.plugins.eclipse.formatter.strategies.eclipse.EclipseFormatter.ProfileNotFoundException;
-import static de.markiewb.netbeans.plugins.eclipse.formatter.options.Preferences.ECLIPSE_FORMATTER_ACTIVE_PROFILE;
-import static de.markiewb.netbeans.plugins.eclipse.formatter.options.Preferences.ECLIPSE_FORMATTER_ENABLED;
-import static de.markiewb.netbeans.plugins.eclipse.formatter.options.Preferences.ECLIPSE_FORMATTER_LOCATION;
-import static de.markiewb.netbeans.plugins.eclipse.formatter.options.Preferences.LINEFEED;
-import static de.markiewb.netbeans.plugins.eclipse.formatter.options.Preferences.PRESERVE_BREAKPOINTS;
-import static de.markiewb.netbeans.plugins.eclipse.formatter.options.Preferences.PROJECT_PREF_FILE;
-import static de.markiewb.netbeans.plugins.eclipse.formatter.options.Preferences.SHOW_NOTIFICATIONS;
-import static de.markiewb.netbeans.plugins.eclipse.formatter.options.Preferences.SOURCELEVEL;
-import static de.markiewb.netbeans.plugins.eclipse.formatter.options.Preferences.USE_PROJECT_PREFS;
-import static de.markiewb.netbeans.plugins.eclipse.formatter.options.Preferences.getActivePreferences;
 import static de.markiewb.netbeans.plugins.eclipse.formatter.options.Preferences.getLineFeed;
 import de.markiewb.netbeans.plugins.eclipse.formatter.strategies.eclipse.EclipseFormatterStrategy;
 import de.markiewb.netbeans.plugins.eclipse.formatter.strategies.netbeans.NetBeansFormatterStrategy;
-import java.io.File;
-import java.util.prefs.Preferences;
 import javax.swing.text.StyledDocument;
 import org.netbeans.api.editor.guards.GuardedSectionManager;
 import org.netbeans.api.project.FileOwnerQuery;
@@ -67,29 +56,24 @@ public class FormatterStrategyDispatcher {
         GuardedSectionManager guards = GuardedSectionManager.getInstance(styledDoc);
         final boolean hasGuardedSections = guards != null;
         final boolean isJava = Utilities.isJava(styledDoc);
-        Preferences pref = getActivePreferences(styledDoc);
-
-        final boolean isEclipseFormatterEnabled = pref.getBoolean(ECLIPSE_FORMATTER_ENABLED, false);
-        final boolean showNotifications = pref.getBoolean(SHOW_NOTIFICATIONS, false);
-        final boolean preserveBreakpoints = pref.getBoolean(PRESERVE_BREAKPOINTS, true);
-        final boolean useProjectPrefs = pref.getBoolean(USE_PROJECT_PREFS, true);
-        final String lineFeed = pref.get(LINEFEED, "");
-        final String sourceLevel = pref.get(SOURCELEVEL, "");
+        final FormattingContext context = FormattingContextCache.getDefault().get(styledDoc);
+
+        final boolean isEclipseFormatterEnabled = context.eclipseFormatterEnabled;
+        final boolean showNotifications = context.showNotifications;
+        final boolean preserveBreakpoints = context.preserveBreakpoints;
+        final String lineFeed = context.lineFeed;
         if (!hasGuardedSections && isJava && isEclipseFormatterEnabled) {
-            String formatterProfile = pref.get(ECLIPSE_FORMATTER_ACTIVE_PROFILE, "");
-            String formatterFile = getFormatterFileFromProjectConfiguration(useProjectPrefs, styledDoc);
-            if (null == formatterFile) {
-                formatterFile = pref.get(ECLIPSE_FORMATTER_LOCATION, null);
-            }
+            String formatterProfile = context.formatterProfile;
+            String formatterFile = context.formatterFile;
 
-            if (!new File(formatterFile).exists()) {
+            if (null == formatterFile || !ConfigFileWatcher.getDefault().watch(formatterFile)) {
                 //fallback to NB
                 formatWithNetBeans(showNotifications, hasGuardedSections, isEclipseFormatterEnabled, isJava, po);
                 return;
             }
 
             //format with configured linefeed
-            final EclipseFormatter formatter = new EclipseFormatter(formatterFile, formatterProfile, lineFeed, sourceLevel);
+            final EclipseFormatter formatter = context.formatter;
 
             try {
                 //save with configured linefeed
@@ -124,20 +108,20 @@ public class FormatterStrategyDispatcher {
         if (useProjectPrefs) {
             FileObject fileForDocument = NbEditorUtilities.getFileObject(styledDoc);
             if (null != fileForDocument) {
-
-                Project project = FileOwnerQuery.getOwner(fileForDocument);
-                if (null != project) {
-                    FileObject projectDirectory = project.getProjectDirectory();
-                    FileObject preferenceFile = projectDirectory.getFileObject(".settings/" + PROJECT_PREF_FILE);
-                    if (null != preferenceFile) {
-                        return preferenceFile.getPath();
-                    }
-                }
+                return getFormatterFileFromProjectConfiguration(useProjectPrefs, FileOwnerQuery.getOwner(fileForDocument));
             }
         }
         return null;
     }
 
+    public static String getFormatterFileFromProjectConfiguration(final boolean useProjectPrefs, final Project project) {
+        //use the nearest .settings/org.eclipse.jdt.core.prefs or *.epf of ${projectdir} or its parents, if activated in options
+        if (useProjectPrefs && null != project) {
+            return FormatterConfigLocator.getDefault().find(project.getProjectDirectory());
+        }
+        return null;
+    }
+
     public String getNotificationMessageForEclipseFormatterConfigurationFileType(String formatterFile, String formatterProfile) {
         String msg = "";
         if (de.markiewb.netbeans.plugins.eclipse.formatter.options.Preferences.isWorkspaceMechanicFile(formatterFile)) {
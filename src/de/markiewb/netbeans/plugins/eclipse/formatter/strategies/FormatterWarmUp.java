@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2013-2016 markiewb.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    markiewb - initial API and implementation and/or initial documentation
+ */
+package de.markiewb.netbeans.plugins.eclipse.formatter.strategies;
+
+import de.markiewb.netbeans.plugins.eclipse.formatter.strategies.eclipse.ConfigFileWatcher;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.netbeans.api.project.Project;
+import org.netbeans.api.project.ui.OpenProjects;
+import org.openide.util.RequestProcessor;
+
+/**
+ * Formats a small compilation unit with the configuration of the global
+ * options and of each opened project on a low-priority thread. So the JDT
+ * classes are loaded and compiled and the settings and formatters are cached,
+ * before the user formats for the first time.
+ *
+ * @author markiewb
+ */
+public final class FormatterWarmUp {
+
+    private static final Logger LOG = Logger.getLogger(FormatterWarmUp.class.getName());
+    private static final RequestProcessor RP = new RequestProcessor(FormatterWarmUp.class.getName(), 1, true);
+    private static final FormatterWarmUp INSTANCE = new FormatterWarmUp();
+
+    public static FormatterWarmUp getDefault() {
+        return INSTANCE;
+    }
+
+    private final Set<Project> warmedProjects = Collections.newSetFromMap(new WeakHashMap<Project, Boolean>());
+    private final Set<String> warmedConfigurations = new HashSet<>();
+
+    FormatterWarmUp() {
+    }
+
+    /**
+     * Warms up the global configuration and the configurations of the
+     * projects, which are open now or will be opened later.
+     */
+    public void start() {
+        final OpenProjects openProjects = OpenProjects.getDefault();
+        openProjects.addPropertyChangeListener(new PropertyChangeListener() {
+
+            @Override
+            public void propertyChange(PropertyChangeEvent evt) {
+                if (OpenProjects.PROPERTY_OPEN_PROJECTS.equals(evt.getPropertyName())) {
+                    warmUp(Arrays.asList(openProjects.getOpenProjects()));
+                }
+            }
+        });
+        List<Project> projects = new ArrayList<>();
+        //files outside of projects
+        projects.add(null);
+        projects.addAll(Arrays.asList(openProjects.getOpenProjects()));
+        warmUp(projects);
+    }
+
+    private void warmUp(final List<Project> projects) {
+        RP.post(new Runnable() {
+
+            @Override
+            public void run() {
+                for (Project project : projects) {
+                    synchronized (warmedProjects) {
+                        if (null != project && !warmedProjects.add(project)) {
+                            continue;
+                        }
+                    }
+                    warmUp(FormattingContextCache.getDefault().get(project));
+                }
+            }
+        }, 0, Thread.MIN_PRIORITY);
+    }
+
+    private void warmUp(FormattingContext context) {
+        if (!context.eclipseFormatterEnabled || null == context.formatter) {
+            return;
+        }
+        final String key = context.formatterFile + '\u0000' + context.formatterProfile + '\u0000' + context.lineFeed + '\u0000' + context.sourceLevel;
+        synchronized (warmedProjects) {
+            if (!warmedConfigurations.add(key)) {
+                return;
+            }
+        }
+        if (!ConfigFileWatcher.getDefault().watch(context.formatterFile)) {
+            return;
+        }
+        final long start = System.nanoTime();
+        try {
+            context.formatter.warmUp();
+            LOG.log(Level.FINE, "Warmed up {0} in {1} ms", new Object[]{context.formatterFile, (System.nanoTime() - start) / 1000000});
+        } catch (RuntimeException ex) {
+            //reported to the user on the first format
+            LOG.log(Level.FINE, "Could not warm up " + context.formatterFile, ex);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2013-2016 markiewb.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    markiewb - initial API and implementation and/or initial documentation
+ */
+package de.markiewb.netbeans.plugins.eclipse.formatter.strategies;
+
+import static de.markiewb.netbeans.plugins.eclipse.formatter.options.Preferences.CHUNKED_FORMATTING;
+import static de.markiewb.netbeans.plugins.eclipse.formatter.options.Preferences.DEFAULT_SAVEACTION_TIME_BUDGET;
+import static de.markiewb.netbeans.plugins.eclipse.formatter.options.Preferences.ECLIPSE_FORMATTER_ACTIVE_PROFILE;
+import static de.markiewb.netbeans.plugins.eclipse.formatter.options.Preferences.ECLIPSE_FORMATTER_ENABLED;
+import static de.markiewb.netbeans.plugins.eclipse.formatter.options.Preferences.ECLIPSE_FORMATTER_LOCATION;
+import static de.markiewb.netbeans.plugins.eclipse.formatter.options.Preferences.ENABLE_SAVEACTION;
+import static de.markiewb.netbeans.plugins.eclipse.formatter.options.Preferences.ENABLE_SAVEACTION_MODIFIEDLINESONLY;
+import static de.markiewb.netbeans.plugins.eclipse.formatter.options.Preferences.LINEFEED;
+import static de.markiewb.netbeans.plugins.eclipse.formatter.options.Preferences.PRESERVE_BREAKPOINTS;
+import static de.markiewb.netbeans.plugins.eclipse.formatter.options.Preferences.SAVEACTION_TIME_BUDGET;
+import static de.markiewb.netbeans.plugins.eclipse.formatter.options.Preferences.SHOW_NOTIFICATIONS;
+import static de.markiewb.netbeans.plugins.eclipse.formatter.options.Preferences.SOURCELEVEL;
+import static de.markiewb.netbeans.plugins.eclipse.formatter.options.Preferences.USE_PROJECT_PREFS;
+import static de.markiewb.netbeans.plugins.eclipse.formatter.options.Preferences.getActivePreferences;
+import de.markiewb.netbeans.plugins.eclipse.formatter.strategies.eclipse.EclipseFormatter;
+import java.util.prefs.Preferences;
+import org.netbeans.api.project.Project;
+
+/**
+ * The resolved formatter options of a project. Instances are immutable and
+ * cached by the {@link FormattingContextCache}.
+ *
+ * @author markiewb
+ */
+public final class FormattingContext {
+
+    public final boolean eclipseFormatterEnabled;
+    public final boolean showNotifications;
+    public final boolean preserveBreakpoints;
+    public final boolean enableSaveAction;
+    public final boolean modifiedLinesOnly;
+    /**
+     * Milliseconds the save action may spend on formatting, <code>0</code>
+     * for no limit.
+     */
+    public final int saveActionTimeBudget;
+    public final String lineFeed;
+    public final String sourceLevel;
+    public final String formatterProfile;
+    public final boolean chunkedFormatting;
+    /**
+     * The project or the global config file, may be <code>null</code>.
+     */
+    public final String formatterFile;
+    /**
+     * The formatter for {@link #formatterFile}, may be <code>null</code>.
+     */
+    public final EclipseFormatter formatter;
+
+    private FormattingContext(Preferences pref, String formatterFile) {
+        this.eclipseFormatterEnabled = pref.getBoolean(ECLIPSE_FORMATTER_ENABLED, false);
+        this.showNotifications = pref.getBoolean(SHOW_NOTIFICATIONS, false);
+        this.preserveBreakpoints = pref.getBoolean(PRESERVE_BREAKPOINTS, true);
+        this.enableSaveAction = pref.getBoolean(ENABLE_SAVEACTION, false);
+        this.modifiedLinesOnly = pref.getBoolean(ENABLE_SAVEACTION_MODIFIEDLINESONLY, false);
+        this.saveActionTimeBudget = Math.max(0, pref.getInt(SAVEACTION_TIME_BUDGET, DEFAULT_SAVEACTION_TIME_BUDGET));
+        this.lineFeed = pref.get(LINEFEED, "");
+        this.sourceLevel = pref.get(SOURCELEVEL, "");
+        this.formatterProfile = pref.get(ECLIPSE_FORMATTER_ACTIVE_PROFILE, "");
+        this.chunkedFormatting = pref.getBoolean(CHUNKED_FORMATTING, false);
+        this.formatterFile = formatterFile;
+        this.formatter = null != formatterFile ? new EclipseFormatter(formatterFile, formatterProfile, lineFeed, sourceLevel, chunkedFormatting) : null;
+    }
+
+    /**
+     * @param project the project or <code>null</code> for files outside of
+     * projects
+     */
+    static FormattingContext resolve(Project project) {
+        Preferences pref = getActivePreferences(project);
+        final boolean useProjectPrefs = pref.getBoolean(USE_PROJECT_PREFS, true);
+        String formatterFile = FormatterStrategyDispatcher.getFormatterFileFromProjectConfiguration(useProjectPrefs, project);
+        if (null == formatterFile) {
+            formatterFile = pref.get(ECLIPSE_FORMATTER_LOCATION, null);
+        }
+        return new FormattingContext(pref, formatterFile);
+    }
+}
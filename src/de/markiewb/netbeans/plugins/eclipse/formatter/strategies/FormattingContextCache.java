@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2013-2016 markiewb.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    markiewb - initial API and implementation and/or initial documentation
+ */
+package de.markiewb.netbeans.plugins.eclipse.formatter.strategies;
+
+import de.markiewb.netbeans.plugins.eclipse.formatter.options.EclipseFormatterPanel;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.prefs.PreferenceChangeEvent;
+import java.util.prefs.PreferenceChangeListener;
+import javax.swing.text.Document;
+import javax.swing.text.StyledDocument;
+import org.netbeans.api.project.FileOwnerQuery;
+import org.netbeans.api.project.Project;
+import org.netbeans.api.project.ProjectUtils;
+import org.netbeans.api.project.ui.OpenProjects;
+import org.netbeans.modules.editor.NbEditorUtilities;
+import org.openide.filesystems.FileObject;
+import org.openide.util.NbPreferences;
+
+/**
+ * Caches the {@link FormattingContext} per project, so that formatting a
+ * document does not have to look up the owner, the preferences and the config
+ * file again.
+ * <p>
+ * A context is dropped, when the preferences of its project change. All
+ * contexts are dropped, when the global preferences or the open projects
+ * change or when the {@link FormatterConfigLocator} notices a new or removed
+ * config file.
+ *
+ * @author markiewb
+ */
+public final class FormattingContextCache {
+
+    private static final FormattingContextCache INSTANCE = new FormattingContextCache();
+    private static final Reference<Project> NO_OWNER = new WeakReference<>(null);
+
+    public static FormattingContextCache getDefault() {
+        return INSTANCE;
+    }
+
+    private final Map<Document, Reference<Project>> owners = new WeakHashMap<>();
+    private final Map<Project, FormattingContext> contexts = new WeakHashMap<>();
+    private final Map<Project, ProjectListener> listeners = new WeakHashMap<>();
+    private FormattingContext globalContext;
+    private long generation;
+    private boolean initialized;
+
+    FormattingContextCache() {
+    }
+
+    /**
+     * @return the context of the project which owns the document
+     */
+    public FormattingContext get(StyledDocument styledDoc) {
+        synchronized (contexts) {
+            initialize();
+            Reference<Project> owner = owners.get(styledDoc);
+            if (null != owner) {
+                Project project = owner.get();
+                if (null != project || NO_OWNER == owner) {
+                    FormattingContext context = null == project ? globalContext : contexts.get(project);
+                    if (null != context) {
+                        return context;
+                    }
+                }
+            }
+        }
+        FileObject fileObject = NbEditorUtilities.getFileObject(styledDoc);
+        final Project project = null != fileObject ? FileOwnerQuery.getOwner(fileObject) : null;
+        FormattingContext context = get(project);
+        synchronized (contexts) {
+            owners.put(styledDoc, null == project ? NO_OWNER : new WeakReference<>(project));
+        }
+        return context;
+    }
+
+    /**
+     * @param project the project or <code>null</code> for files outside of
+     * projects
+     */
+    public FormattingContext get(Project project) {
+        final long loadedGeneration;
+        synchronized (contexts) {
+            initialize();
+            FormattingContext context = null == project ? globalContext : contexts.get(project);
+            if (null != context) {
+                return context;
+            }
+            loadedGeneration = generation;
+        }
+        if (null != project) {
+            listen(project);
+        }
+        FormattingContext context = FormattingContext.resolve(project);
+        synchronized (contexts) {
+            //do not cache what has been resolved while the options changed
+            if (loadedGeneration == generation) {
+                if (null == project) {
+                    globalContext = context;
+                } else {
+                    contexts.put(project, context);
+                }
+            }
+        }
+        return context;
+    }
+
+    public void clear() {
+        synchronized (contexts) {
+            generation++;
+            owners.clear();
+            contexts.clear();
+            globalContext = null;
+        }
+    }
+
+    private void invalidate(Project project) {
+        synchronized (contexts) {
+            generation++;
+            contexts.remove(project);
+        }
+    }
+
+    private void initialize() {
+        if (initialized) {
+            return;
+        }
+        initialized = true;
+        NbPreferences.forModule(EclipseFormatterPanel.class).addPreferenceChangeListener(new PreferenceChangeListener() {
+
+            @Override
+            public void preferenceChange(PreferenceChangeEvent evt) {
+                //projects may use the global preferences
+                clear();
+            }
+        });
+        OpenProjects.getDefault().addPropertyChangeListener(new PropertyChangeListener() {
+
+            @Override
+            public void propertyChange(PropertyChangeEvent evt) {
+                if (OpenProjects.PROPERTY_OPEN_PROJECTS.equals(evt.getPropertyName())) {
+                    clear();
+                }
+            }
+        });
+    }
+
+    private void listen(Project project) {
+        ProjectListener listener;
+        synchronized (contexts) {
+            if (listeners.containsKey(project)) {
+                return;
+            }
+            listener = new ProjectListener(project);
+            listeners.put(project, listener);
+        }
+        ProjectUtils.getPreferences(project, EclipseFormatterPanel.class, true).addPreferenceChangeListener(listener);
+    }
+
+    /**
+     * Does not reference the project strongly, because the preferences may
+     * outlive it.
+     */
+    private final class ProjectListener implements PreferenceChangeListener {
+
+        private final Reference<Project> project;
+
+        ProjectListener(Project project) {
+            this.project = new WeakReference<>(project);
+        }
+
+        @Override
+        public void preferenceChange(PreferenceChangeEvent evt) {
+            Project p = project.get();
+            if (null != p) {
+                invalidate(p);
+            }
+        }
+    }
+}
@@ -10,8 +10,7 @@
  */
 package de.markiewb.netbeans.plugins.eclipse.formatter.strategies;
 
-import de.markiewb.netbeans.plugins.eclipse.formatter.Pair;
-import java.util.SortedSet;
+import de.markiewb.netbeans.plugins.eclipse.formatter.IntervalSet;
 import javax.swing.text.JTextComponent;
 import javax.swing.text.StyledDocument;
 
@@ -22,10 +21,19 @@ import javax.swing.text.StyledDocument;
 public class ParameterObject {
 
     public StyledDocument styledDoc;
-    public SortedSet<Pair> changedElements;
+    public IntervalSet changedElements;
     public boolean forSave;
     public int selectionStart;
     public int selectionEnd;
     public int caret;
     public JTextComponent editor;
+    /**
+     * Milliseconds the save action may spend on formatting, <code>0</code>
+     * for no limit.
+     */
+    public int timeBudget;
+    /**
+     * Set by another thread to abandon the formatting.
+     */
+    public volatile boolean cancelled;
 }
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2013-2016 markiewb.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    markiewb - initial API and implementation and/or initial documentation
+ */
+package de.markiewb.netbeans.plugins.eclipse.formatter.strategies.eclipse;
+
+import de.markiewb.netbeans.plugins.eclipse.formatter.IntervalSet;
+import java.util.List;
+import javax.swing.text.StyledDocument;
+import org.netbeans.api.progress.ProgressHandle;
+import org.netbeans.api.progress.ProgressHandleFactory;
+import org.openide.awt.StatusDisplayer;
+import org.openide.util.Cancellable;
+import org.openide.util.Exceptions;
+import org.openide.util.RequestProcessor;
+
+/**
+ * Formats a snapshot of the document in the background and applies the result
+ * only if the document has not been changed in the meantime. If it has been
+ * changed, the whole document is formatted again; a changed selection cannot
+ * be tracked, so formatting a selection is given up.
+ *
+ * @author markiewb
+ */
+final class AsyncFormatTask implements Runnable, Cancellable {
+
+    private static final RequestProcessor RP = new RequestProcessor(AsyncFormatTask.class.getName(), 1, true);
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final StyledDocument document;
+    private final EclipseFormatter formatter;
+    private final int dot;
+    private final int mark;
+    private final boolean preserveBreakpoints;
+    private final IntervalSet changedElements;
+    private final Runnable onApplied;
+    private final DocumentVersion version = new DocumentVersion();
+    private volatile boolean cancelled;
+    private EclipseFormatterRunnable runnable;
+    private String docText;
+    private int expectedVersion;
+
+    /**
+     * @param onApplied is run after the formatted text has been applied
+     */
+    AsyncFormatTask(StyledDocument document, EclipseFormatter formatter, int dot, int mark, boolean preserveBreakpoints, IntervalSet changedElements, Runnable onApplied) {
+        this.document = document;
+        this.formatter = formatter;
+        this.dot = dot;
+        this.mark = mark;
+        this.preserveBreakpoints = preserveBreakpoints;
+        this.changedElements = changedElements;
+        this.onApplied = onApplied;
+    }
+
+    /**
+     * Takes the snapshot in the calling thread and formats it in the
+     * background.
+     */
+    void start() {
+        document.addDocumentListener(version);
+        snapshot(dot, mark);
+        RP.post(this);
+    }
+
+    @Override
+    public void run() {
+        ProgressHandle handle = ProgressHandleFactory.createHandle("Formatting with Eclipse formatter", this);
+        handle.start();
+        try {
+            for (int attempt = 1; null != docText && !cancelled; attempt++) {
+                final List<TextDelta> deltas = runnable.format(docText);
+                if (cancelled) {
+                    return;
+                }
+                if (runnable.apply(deltas, version, expectedVersion)) {
+                    onApplied.run();
+                    return;
+                }
+                if (attempt >= MAX_ATTEMPTS || dot != mark) {
+                    StatusDisplayer.getDefault().setStatusText("Formatting cancelled, because the document has been changed");
+                    return;
+                }
+                //format the current text of the whole document again
+                snapshot(-1, -1);
+            }
+        } catch (Exception ex) {
+            Exceptions.printStackTrace(ex);
+        } finally {
+            document.removeDocumentListener(version);
+            handle.finish();
+        }
+    }
+
+    @Override
+    public boolean cancel() {
+        cancelled = true;
+        return true;
+    }
+
+    private void snapshot(int snapshotDot, int snapshotMark) {
+        expectedVersion = version.get();
+        runnable = new EclipseFormatterRunnable(document, formatter, snapshotDot, snapshotMark, preserveBreakpoints, changedElements);
+        docText = runnable.readText();
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2013-2016 markiewb.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    markiewb - initial API and implementation and/or initial documentation
+ */
+package de.markiewb.netbeans.plugins.eclipse.formatter.strategies.eclipse;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.netbeans.api.debugger.Breakpoint;
+import org.netbeans.api.debugger.DebuggerManager;
+import org.netbeans.api.debugger.DebuggerManagerAdapter;
+import org.netbeans.api.debugger.jpda.LineBreakpoint;
+import org.openide.filesystems.FileObject;
+import org.openide.filesystems.FileUtil;
+import org.openide.util.Utilities;
+
+/**
+ * Index of the LineBreakpoints of the IDE by their file, so that formatting
+ * does not have to scan all breakpoints. The index is kept up to date by
+ * listening to the {@link DebuggerManager} and the indexed breakpoints.
+ *
+ * @author markiewb
+ */
+final class BreakpointIndex {
+
+    private static final Logger LOG = Logger.getLogger(BreakpointIndex.class.getName());
+    private static BreakpointIndex instance;
+
+    static synchronized BreakpointIndex getDefault() {
+        if (null == instance) {
+            instance = new BreakpointIndex();
+            instance.attach(DebuggerManager.getDebuggerManager());
+        }
+        return instance;
+    }
+
+    private final Map<FileObject, List<LineBreakpoint>> lineBreakpoints = new HashMap<>();
+    /**
+     * LineBreakpoints, whose URL did not denote an existing file when they
+     * were indexed.
+     */
+    private final Map<String, List<LineBreakpoint>> unresolved = new HashMap<>();
+    /**
+     * The file or unresolved URL each breakpoint is indexed with.
+     */
+    private final Map<Breakpoint, Object> keys = new IdentityHashMap<>();
+    private final PropertyChangeListener breakpointListener = new PropertyChangeListener() {
+
+        @Override
+        public void propertyChange(PropertyChangeEvent evt) {
+            if (LineBreakpoint.PROP_URL.equals(evt.getPropertyName())) {
+                final Breakpoint breakpoint = (Breakpoint) evt.getSource();
+                synchronized (BreakpointIndex.this) {
+                    if (unindex(breakpoint)) {
+                        index(breakpoint);
+                    }
+                }
+            }
+        }
+    };
+
+    BreakpointIndex() {
+    }
+
+    void attach(DebuggerManager debuggerManager) {
+        debuggerManager.addDebuggerListener(DebuggerManager.PROP_BREAKPOINTS, new DebuggerManagerAdapter() {
+
+            @Override
+            public void breakpointAdded(Breakpoint breakpoint) {
+                add(breakpoint);
+            }
+
+            @Override
+            public void breakpointRemoved(Breakpoint breakpoint) {
+                remove(breakpoint);
+            }
+        });
+        for (Breakpoint breakpoint : debuggerManager.getBreakpoints()) {
+            add(breakpoint);
+        }
+    }
+
+    void add(Breakpoint breakpoint) {
+        if (!(breakpoint instanceof LineBreakpoint)) {
+            return;
+        }
+        synchronized (this) {
+            if (keys.containsKey(breakpoint)) {
+                return;
+            }
+            index(breakpoint);
+        }
+        breakpoint.addPropertyChangeListener(breakpointListener);
+    }
+
+    void remove(Breakpoint breakpoint) {
+        synchronized (this) {
+            if (!unindex(breakpoint)) {
+                return;
+            }
+        }
+        breakpoint.removePropertyChangeListener(breakpointListener);
+    }
+
+    /**
+     * @return the LineBreakpoints of the file
+     */
+    synchronized List<LineBreakpoint> getLineBreakpoints(FileObject file) {
+        if (!unresolved.isEmpty()) {
+            resolve(file);
+        }
+        List<LineBreakpoint> breakpoints = lineBreakpoints.get(file);
+        return null == breakpoints ? Collections.<LineBreakpoint>emptyList() : new ArrayList<>(breakpoints);
+    }
+
+    private void index(Breakpoint breakpoint) {
+        LineBreakpoint lineBreakpoint = (LineBreakpoint) breakpoint;
+        Object key = null;
+        final String url = lineBreakpoint.getURL();
+        if (null != url && !url.startsWith("jar:file:")) {
+            //https://github.com/markiewb/eclipsecodeformatter_for_netbeans/issues/80
+            //prevent URI is not hierarchical.
+            final FileObject file = toFileObject(url);
+            if (null != file) {
+                put(lineBreakpoints, file, lineBreakpoint);
+                key = file;
+            } else {
+                put(unresolved, url, lineBreakpoint);
+                key = url;
+            }
+        }
+        keys.put(breakpoint, key);
+    }
+
+    /**
+     * @return <code>true</code> if the breakpoint was indexed
+     */
+    private boolean unindex(Breakpoint breakpoint) {
+        if (!keys.containsKey(breakpoint)) {
+            return false;
+        }
+        final Object key = keys.remove(breakpoint);
+        if (key instanceof FileObject) {
+            removeFrom(lineBreakpoints, (FileObject) key, breakpoint);
+        } else if (null != key) {
+            removeFrom(unresolved, (String) key, breakpoint);
+        }
+        return true;
+    }
+
+    /**
+     * Indexes the unresolved LineBreakpoints of the file, which did not exist
+     * when they were indexed. Only the URL of the file is looked up, as the
+     * breakpoints of deleted files stay unresolved.
+     */
+    private void resolve(FileObject file) {
+        final List<LineBreakpoint> breakpoints = unresolved.get(file.toURL().toExternalForm());
+        if (null == breakpoints) {
+            return;
+        }
+        for (LineBreakpoint breakpoint : new ArrayList<>(breakpoints)) {
+            unindex(breakpoint);
+            index(breakpoint);
+        }
+    }
+
+    private static FileObject toFileObject(String url) {
+        try {
+            return FileUtil.toFileObject(FileUtil.normalizeFile(Utilities.toFile(new URI(url))));
+        } catch (Exception ex) {
+            LOG.log(Level.WARNING, "{0} cannot be converted to URI/File: {1}. Please report to https://github.com/markiewb/eclipsecodeformatter_for_netbeans/issues/55", new Object[]{url, ex.getMessage()});
+            return null;
+        }
+    }
+
+    private static <K, V> void put(Map<K, List<V>> map, K key, V value) {
+        List<V> values = map.get(key);
+        if (null == values) {
+            values = new ArrayList<>(1);
+            map.put(key, values);
+        }
+        values.add(value);
+    }
+
+    private static <K, V> void removeFrom(Map<K, List<V>> map, K key, Object value) {
+        List<V> values = map.get(key);
+        if (null == values) {
+            return;
+        }
+        for (Iterator<V> it = values.iterator(); it.hasNext();) {
+            if (it.next() == value) {
+                it.remove();
+                break;
+            }
+        }
+        if (values.isEmpty()) {
+            map.remove(key);
+        }
+    }
+}
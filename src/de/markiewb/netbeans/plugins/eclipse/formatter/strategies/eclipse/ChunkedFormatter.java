@@ -0,0 +1,436 @@
+/*
+ * Copyright (c) 2013-2016 markiewb.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    markiewb - initial API and implementation and/or initial documentation
+ */
+package de.markiewb.netbeans.plugins.eclipse.formatter.strategies.eclipse;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.eclipse.jdt.core.compiler.IProblem;
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jdt.core.dom.BodyDeclaration;
+import org.eclipse.jdt.core.dom.Comment;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.FieldDeclaration;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.TypeDeclaration;
+import org.eclipse.jdt.core.formatter.CodeFormatter;
+import org.eclipse.jdt.core.formatter.DefaultCodeFormatterConstants;
+import org.eclipse.text.edits.MultiTextEdit;
+import org.eclipse.text.edits.ReplaceEdit;
+import org.eclipse.text.edits.TextEdit;
+
+/**
+ * Formats a large compilation unit in parallel. The members of the top-level
+ * classes are split into chunks, which are formatted concurrently as
+ * {@link CodeFormatter#K_CLASS_BODY_DECLARATIONS}. The rest of the unit (the
+ * skeleton) is formatted with each chunk replaced by stubs of its first and
+ * last member, so that the blank lines and the indentation between the chunks
+ * are the ones of the full format.
+ * <p>
+ * Only units, for which chunking cannot change the result, are formatted in
+ * chunks: units without formatter off/on tags, which may span several chunks.
+ * The units are only split between members, where no comment is next to the
+ * boundary, which may be attached to a member of the neighbouring chunk. Then
+ * each member is
+ * formatted with the same indentation as in the whole unit, so a difference
+ * can only be caused by options, which relate several members, like the
+ * alignment of fields in columns. Such a difference depends on the
+ * configuration and not on the code, so only the first results of each
+ * configuration are compared with the format of the whole compilation unit.
+ * If they differ, the configuration is not formatted in chunks anymore.
+ *
+ * @author markiewb
+ */
+final class ChunkedFormatter {
+
+    /**
+     * Smaller units are formatted as a whole.
+     */
+    static final int MIN_LENGTH = 256 * 1024;
+    private static final int MIN_CHUNK_LENGTH = 32 * 1024;
+    static final int VERIFICATIONS = 2;
+    private static final int DISABLED = -1;
+    /**
+     * Number of configurations, whose verifications are remembered.
+     */
+    private static final int MAX_CONFIGURATIONS = 16;
+    private static final String STUB = "__eclipseFormatterChunk";
+    static final int THREADS = Runtime.getRuntime().availableProcessors();
+    /**
+     * Not a RequestProcessor, so that the command line formatter does not
+     * depend on the NetBeans APIs.
+     */
+    private static final ForkJoinPool POOL = new ForkJoinPool(THREADS);
+    private static final Logger LOG = Logger.getLogger(ChunkedFormatter.class.getName());
+    /**
+     * Number of successful verifications per config fingerprint, the least
+     * recently used configurations are verified again.
+     */
+    private static final Map<Long, Integer> verifications = new LinkedHashMap<Long, Integer>(MAX_CONFIGURATIONS, 0.75f, true) {
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Integer> eldest) {
+            return size() > MAX_CONFIGURATIONS;
+        }
+    };
+
+    private ChunkedFormatter() {
+    }
+
+    /**
+     * @return the edits which format the code or <code>null</code> if the code
+     * cannot be formatted in chunks
+     */
+    static TextEdit format(String code, Map<String, String> config, long fingerprint, String lineSeparator) {
+        final int verified;
+        synchronized (verifications) {
+            Integer value = verifications.get(fingerprint);
+            verified = null != value ? value : 0;
+        }
+        if (THREADS < 2 || DISABLED == verified || code.contains(STUB) || hasOffTag(code, config)
+                || DefaultCodeFormatterConstants.TRUE.equals(config.get(DefaultCodeFormatterConstants.FORMATTER_ALIGN_TYPE_MEMBERS_ON_COLUMNS))) {
+            return null;
+        }
+        final List<Chunk> chunks = split(code, config);
+        if (chunks.size() < 2) {
+            return null;
+        }
+        final String formatted;
+        try {
+            formatted = format(code, chunks, config, fingerprint, lineSeparator);
+        } catch (Exception ex) {
+            LOG.log(Level.FINE, "Code could not be formatted in chunks", ex);
+            return null;
+        }
+        if (verified < VERIFICATIONS) {
+            final String expected = formatWhole(code, config, fingerprint, lineSeparator);
+            synchronized (verifications) {
+                verifications.put(fingerprint, expected.equals(formatted) ? verified + 1 : DISABLED);
+            }
+            if (!expected.equals(formatted)) {
+                LOG.info("Chunked formatting differs from the format of the whole compilation unit, it is disabled for this configuration");
+                return diff(code, expected);
+            }
+        }
+        return diff(code, formatted);
+    }
+
+    private static boolean hasOffTag(String code, Map<String, String> config) {
+        if (!DefaultCodeFormatterConstants.TRUE.equals(config.get(DefaultCodeFormatterConstants.FORMATTER_USE_ON_OFF_TAGS))) {
+            return false;
+        }
+        final String tag = config.get(DefaultCodeFormatterConstants.FORMATTER_DISABLING_TAG);
+        return code.contains(null == tag || tag.isEmpty() ? "@formatter:off" : tag);
+    }
+
+    private static List<Chunk> split(String code, Map<String, String> config) {
+        ASTParser parser = ASTParser.newParser(AST.JLS8);
+        parser.setKind(ASTParser.K_COMPILATION_UNIT);
+        parser.setCompilerOptions(config);
+        parser.setSource(code.toCharArray());
+        final CompilationUnit unit = (CompilationUnit) parser.createAST(null);
+        final List<Chunk> chunks = new ArrayList<>();
+        for (IProblem problem : unit.getProblems()) {
+            if (problem.isError()) {
+                return chunks;
+            }
+        }
+        final int[] comments = getCommentRanges(unit);
+        final int chunkLength = Math.max(MIN_CHUNK_LENGTH, code.length() / (THREADS * 4));
+        for (Object type : unit.types()) {
+            if (!(type instanceof TypeDeclaration)) {
+                continue;
+            }
+            final List<?> members = ((TypeDeclaration) type).bodyDeclarations();
+            if (members.isEmpty()
+                    || null == Stub.of(members.get(0))
+                    || null == Stub.of(members.get(members.size() - 1))
+                    || !isPlainBoundary(code, comments, unit.getExtendedStartPosition((BodyDeclaration) members.get(0)))
+                    || !isPlainBoundary(code, comments, getExtendedEnd(unit, (BodyDeclaration) members.get(members.size() - 1)))) {
+                continue;
+            }
+            BodyDeclaration first = (BodyDeclaration) members.get(0);
+            for (int i = 0; i < members.size(); i++) {
+                final BodyDeclaration member = (BodyDeclaration) members.get(i);
+                final int start = unit.getExtendedStartPosition(first);
+                final int end = getExtendedEnd(unit, member);
+                final boolean last = i == members.size() - 1;
+                if (last || (end - start >= chunkLength && null != Stub.of(member) && null != Stub.of(members.get(i + 1))
+                        && isPlainBoundary(code, comments, end)
+                        && isPlainBoundary(code, comments, unit.getExtendedStartPosition((BodyDeclaration) members.get(i + 1))))) {
+                    chunks.add(new Chunk(start, end, Stub.of(first), Stub.of(member), first == member));
+                    if (!last) {
+                        first = (BodyDeclaration) members.get(i + 1);
+                    }
+                }
+            }
+        }
+        return chunks;
+    }
+
+    private static int getExtendedEnd(CompilationUnit unit, BodyDeclaration member) {
+        return unit.getExtendedStartPosition(member) + unit.getExtendedLength(member);
+    }
+
+    /**
+     * @return start and end of each comment in ascending order
+     */
+    private static int[] getCommentRanges(CompilationUnit unit) {
+        final List<?> comments = unit.getCommentList();
+        final int[] ranges = new int[comments.size() * 2];
+        for (int i = 0; i < comments.size(); i++) {
+            final Comment comment = (Comment) comments.get(i);
+            ranges[2 * i] = comment.getStartPosition();
+            ranges[2 * i + 1] = comment.getStartPosition() + comment.getLength();
+        }
+        return ranges;
+    }
+
+    /**
+     * @return <code>true</code> if no comment touches the whitespace around
+     * the position
+     */
+    private static boolean isPlainBoundary(String code, int[] comments, int position) {
+        int from = position;
+        while (from > 0 && Character.isWhitespace(code.charAt(from - 1))) {
+            from--;
+        }
+        final int to = skipWhitespace(code, position);
+        //first comment ending at or after the whitespace
+        int low = 0;
+        int high = comments.length / 2;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (comments[2 * middle + 1] < from) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low == comments.length / 2 || comments[2 * low] > to;
+    }
+
+    private static String format(final String code, final List<Chunk> chunks, final Map<String, String> config, final long fingerprint, final String lineSeparator) throws ExecutionException, InterruptedException {
+        final int indentation = DefaultCodeFormatterConstants.FALSE.equals(config.get(DefaultCodeFormatterConstants.FORMATTER_INDENT_BODY_DECLARATIONS_COMPARE_TO_TYPE_HEADER)) ? 0 : 1;
+        List<Callable<String>> tasks = new ArrayList<>();
+        tasks.add(new Callable<String>() {
+
+            @Override
+            public String call() {
+                return formatWhole(skeleton(code, chunks), config, fingerprint, lineSeparator);
+            }
+        });
+        for (final Chunk chunk : chunks) {
+            tasks.add(new Callable<String>() {
+
+                @Override
+                public String call() {
+                    return format(CodeFormatter.K_CLASS_BODY_DECLARATIONS, code.substring(chunk.start, chunk.end), indentation, config, fingerprint, lineSeparator);
+                }
+            });
+        }
+        List<String> results = new ArrayList<>();
+        for (Future<String> future : POOL.invokeAll(tasks)) {
+            results.add(future.get());
+        }
+        return stitch(results.get(0), chunks, results.subList(1, results.size()));
+    }
+
+    private static String formatWhole(String code, Map<String, String> config, long fingerprint, String lineSeparator) {
+        return format(CodeFormatter.K_COMPILATION_UNIT + CodeFormatter.F_INCLUDE_COMMENTS, code, 0, config, fingerprint, lineSeparator);
+    }
+
+    private static String format(int kind, String code, int indentation, Map<String, String> config, long fingerprint, String lineSeparator) {
+        final CodeFormatter formatter = CodeFormatterPool.getDefault().acquire(fingerprint, config);
+        try {
+            final TextEdit edit = formatter.format(kind | CodeFormatter.F_INCLUDE_COMMENTS, code, 0, code.length(), indentation, lineSeparator);
+            if (null == edit) {
+                throw new IllegalStateException("Code could not be formatted!");
+            }
+            return TextDelta.apply(code, TextDelta.of(edit, code));
+        } finally {
+            CodeFormatterPool.getDefault().release(fingerprint, formatter);
+        }
+    }
+
+    private static String skeleton(String code, List<Chunk> chunks) {
+        StringBuilder sb = new StringBuilder();
+        int position = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            final Chunk chunk = chunks.get(i);
+            sb.append(code, position, chunk.start);
+            chunk.first.append(sb, STUB + i + "_a");
+            if (!chunk.single) {
+                sb.append('\n');
+                chunk.last.append(sb, STUB + i + "_b");
+            }
+            position = chunk.end;
+        }
+        return sb.append(code, position, code.length()).toString();
+    }
+
+    /**
+     * Replaces the stubs of the formatted skeleton by the formatted chunks.
+     */
+    private static String stitch(String skeleton, List<Chunk> chunks, List<String> formattedChunks) {
+        StringBuilder sb = new StringBuilder(skeleton.length());
+        int position = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            final Chunk chunk = chunks.get(i);
+            final int first = skeleton.indexOf(STUB + i + "_a", position);
+            final int start = chunk.first.start(skeleton, first);
+            final int last = chunk.single ? first : skeleton.indexOf(STUB + i + "_b", first);
+            final int end = chunk.last.end(skeleton, last);
+            if (start < position || end < 0) {
+                throw new IllegalStateException("stub of chunk " + i + " not found");
+            }
+            sb.append(skeleton, position, start).append(trim(formattedChunks.get(i)));
+            position = end;
+        }
+        return sb.append(skeleton, position, skeleton.length()).toString();
+    }
+
+    private static CharSequence trim(String text) {
+        int start = 0;
+        int end = text.length();
+        while (start < end && Character.isWhitespace(text.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        return text.subSequence(start, end);
+    }
+
+    /**
+     * Compares the whitespace between the other characters, which the
+     * formatter usually does not change. From the first other difference on
+     * (e.g. in a formatted comment) the rest is replaced.
+     */
+    private static TextEdit diff(String original, String formatted) {
+        MultiTextEdit edit = new MultiTextEdit();
+        int i = 0;
+        int j = 0;
+        while (i < original.length() || j < formatted.length()) {
+            final int spaceEnd = skipWhitespace(original, i);
+            final int formattedSpaceEnd = skipWhitespace(formatted, j);
+            if (spaceEnd - i != formattedSpaceEnd - j || !original.regionMatches(i, formatted, j, spaceEnd - i)) {
+                edit.addChild(new ReplaceEdit(i, spaceEnd - i, formatted.substring(j, formattedSpaceEnd)));
+            }
+            i = spaceEnd;
+            j = formattedSpaceEnd;
+            if (i < original.length() && j < formatted.length() && original.charAt(i) == formatted.charAt(j)) {
+                i++;
+                j++;
+            } else if (i < original.length() || j < formatted.length()) {
+                edit.addChild(new ReplaceEdit(i, original.length() - i, formatted.substring(j)));
+                break;
+            }
+        }
+        return edit;
+    }
+
+    private static int skipWhitespace(String text, int index) {
+        while (index < text.length() && Character.isWhitespace(text.charAt(index))) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Placeholder for a member in the skeleton, which results in the same
+     * blank lines before and after it as the member.
+     */
+    private enum Stub {
+
+        FIELD("int", ";", ';'),
+        METHOD("void", "() {}", '}'),
+        TYPE("class", " {}", '}');
+
+        private final String keyword;
+        private final String suffix;
+        private final char terminator;
+
+        private Stub(String keyword, String suffix, char terminator) {
+            this.keyword = keyword;
+            this.suffix = suffix;
+            this.terminator = terminator;
+        }
+
+        static Stub of(Object member) {
+            if (member instanceof FieldDeclaration) {
+                return FIELD;
+            }
+            if (member instanceof MethodDeclaration) {
+                return METHOD;
+            }
+            if (member instanceof TypeDeclaration) {
+                return TYPE;
+            }
+            return null;
+        }
+
+        void append(StringBuilder sb, String name) {
+            sb.append(keyword).append(' ').append(name).append(suffix);
+        }
+
+        /**
+         * @return the start of the stub, whose name is at the index, or -1
+         */
+        int start(String text, int nameIndex) {
+            if (nameIndex < 0) {
+                return -1;
+            }
+            int index = nameIndex;
+            while (index > 0 && Character.isWhitespace(text.charAt(index - 1))) {
+                index--;
+            }
+            index -= keyword.length();
+            return index >= 0 && text.startsWith(keyword, index) ? index : -1;
+        }
+
+        /**
+         * @return the end of the stub, whose name is at the index, or -1
+         */
+        int end(String text, int nameIndex) {
+            if (nameIndex < 0) {
+                return -1;
+            }
+            final int index = text.indexOf(terminator, nameIndex);
+            return index < 0 ? -1 : index + 1;
+        }
+    }
+
+    private static final class Chunk {
+
+        final int start;
+        final int end;
+        final Stub first;
+        final Stub last;
+        final boolean single;
+
+        Chunk(int start, int end, Stub first, Stub last, boolean single) {
+            this.start = start;
+            this.end = end;
+            this.first = first;
+            this.last = last;
+            this.single = single;
+        }
+    }
+}
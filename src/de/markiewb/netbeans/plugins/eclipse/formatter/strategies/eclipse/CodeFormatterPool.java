@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2013-2016 markiewb.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    markiewb - initial API and implementation and/or initial documentation
+ */
+package de.markiewb.netbeans.plugins.eclipse.formatter.strategies.eclipse;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.eclipse.jdt.core.ToolFactory;
+import org.eclipse.jdt.core.formatter.CodeFormatter;
+
+/**
+ * Bounded pool of ready-to-use {@link CodeFormatter} instances. The instances
+ * are keyed by the {@link ConfigFingerprint} of the settings they were created
+ * for, the least recently used configuration is evicted first.
+ * <p>
+ * A {@link CodeFormatter} is not thread-safe, so an instance is handed out
+ * exclusively by {@link #acquire(long, Map)} and has to be given back by
+ * {@link #release(long, CodeFormatter)}.
+ *
+ * @author markiewb
+ */
+public final class CodeFormatterPool {
+
+    private static final int MAX_CONFIGURATIONS = 8;
+    private static final int MAX_IDLE_PER_CONFIGURATION = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private static final CodeFormatterPool INSTANCE = new CodeFormatterPool();
+
+    public static CodeFormatterPool getDefault() {
+        return INSTANCE;
+    }
+
+    private final Map<Long, Slot> slots = new LinkedHashMap<Long, Slot>(16, 0.75f, true) {
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Slot> eldest) {
+            return size() > MAX_CONFIGURATIONS;
+        }
+    };
+
+    CodeFormatterPool() {
+    }
+
+    /**
+     * @param fingerprint {@link ConfigFingerprint} of the settings
+     * @param settings the effective settings
+     * @return an idle formatter for the settings or a new one
+     */
+    public CodeFormatter acquire(long fingerprint, Map<String, String> settings) {
+        synchronized (slots) {
+            Slot slot = slots.get(fingerprint);
+            if (null != slot && !slot.matches(settings)) {
+                //fingerprint collision, the newer configuration wins
+                slots.remove(fingerprint);
+                slot = null;
+            }
+            if (null == slot) {
+                slots.put(fingerprint, new Slot(settings));
+            } else if (!slot.idle.isEmpty()) {
+                return slot.idle.pop();
+            }
+        }
+        return ToolFactory.createCodeFormatter(settings);
+    }
+
+    public void release(long fingerprint, CodeFormatter formatter) {
+        synchronized (slots) {
+            Slot slot = slots.get(fingerprint);
+            if (null != slot && slot.idle.size() < MAX_IDLE_PER_CONFIGURATION) {
+                slot.idle.push(formatter);
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (slots) {
+            slots.clear();
+        }
+    }
+
+    private static final class Slot {
+
+        private final Map<String, String> settings;
+        private final Deque<CodeFormatter> idle = new ArrayDeque<>();
+
+        Slot(Map<String, String> settings) {
+            this.settings = settings;
+        }
+
+        boolean matches(Map<String, String> other) {
+            return settings == other || settings.equals(other);
+        }
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright (c) 2013-2016 markiewb.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    markiewb - initial API and implementation and/or initial documentation
+ */
+package de.markiewb.netbeans.plugins.eclipse.formatter.strategies.eclipse;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Process-wide cache of the effective formatter settings. An entry is keyed by
+ * the canonical path of the configuration file plus the profile, source level
+ * and linefeed it was resolved for. The last-modified timestamp and the size of
+ * the file are stored with the entry, so any change of the file results in a
+ * miss and the file is read again.
+ * <p>
+ * Files which are {@link #setWatched(File, boolean) watched} are not checked
+ * on every access. The watcher has to {@link #invalidate(File) invalidate}
+ * them, when they change.
+ *
+ * @author markiewb
+ */
+public final class ConfigCache {
+
+    private static final Logger LOG = Logger.getLogger(ConfigCache.class.getName());
+    private static final int MAX_ENTRIES = 32;
+    private static final ConfigCache INSTANCE = new ConfigCache();
+
+    public static ConfigCache getDefault() {
+        return INSTANCE;
+    }
+
+    private final Map<Key, Stamped> entries = new LinkedHashMap<Key, Stamped>(16, 0.75f, true) {
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Stamped> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private final Map<String, String> canonicalPaths = new HashMap<>();
+    private final Set<String> watchedPaths = new HashSet<>();
+    private long generation;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    ConfigCache() {
+    }
+
+    /**
+     * Returns the cached settings for the given configuration or uses the
+     * loader to read them. Exceptions of the loader are passed through and
+     * nothing is cached in that case.
+     *
+     * @return map of the effective settings as returned by the loader
+     */
+    public Map<String, String> get(File file, String profile, String sourceLevel, String lineFeed, Loader loader) {
+        final String path = getCanonicalPath(file);
+        final Key key = new Key(path, profile, sourceLevel, lineFeed);
+        synchronized (entries) {
+            Stamped cached = entries.get(key);
+            if (null != cached && watchedPaths.contains(path)) {
+                hits.incrementAndGet();
+                return cached.settings;
+            }
+        }
+        final long lastModified = file.lastModified();
+        final long size = file.length();
+        final long loadedGeneration;
+        synchronized (entries) {
+            Stamped cached = entries.get(key);
+            if (null != cached && cached.lastModified == lastModified && cached.size == size) {
+                hits.incrementAndGet();
+                return cached.settings;
+            }
+            loadedGeneration = generation;
+        }
+        misses.incrementAndGet();
+        if (LOG.isLoggable(Level.FINE)) {
+            LOG.log(Level.FINE, "Config cache miss for {0} (hits={1}, misses={2})", new Object[]{key, hits.get(), misses.get()});
+        }
+        Map<String, String> settings = loader.load();
+        synchronized (entries) {
+            //do not cache what has been read while the file was invalidated
+            if (loadedGeneration == generation) {
+                entries.put(key, new Stamped(lastModified, size, settings));
+            }
+        }
+        return settings;
+    }
+
+    /**
+     * Removes all entries of the given file.
+     *
+     * @return the removed entries, so that they can be loaded again
+     */
+    public List<CachedConfig> invalidate(File file) {
+        List<CachedConfig> result = new ArrayList<>();
+        final String path = getCanonicalPath(file);
+        synchronized (entries) {
+            generation++;
+            canonicalPaths.remove(file.getAbsolutePath());
+            for (Iterator<Map.Entry<Key, Stamped>> it = entries.entrySet().iterator(); it.hasNext();) {
+                Map.Entry<Key, Stamped> entry = it.next();
+                final Key key = entry.getKey();
+                if (key.path.equals(path) || key.path.equals(file.getAbsolutePath())) {
+                    result.add(new CachedConfig(file, key.profile, key.sourceLevel, key.lineFeed, entry.getValue().settings));
+                    it.remove();
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param watched <code>true</code>, if changes of the file are reported
+     * by {@link #invalidate(File)}, so that the file does not have to be
+     * checked on every access
+     */
+    public void setWatched(File file, boolean watched) {
+        final String path = getCanonicalPath(file);
+        final long lastModified = file.lastModified();
+        final long size = file.length();
+        synchronized (entries) {
+            if (watched) {
+                watchedPaths.add(path);
+                //drop what has changed before the file was watched
+                for (Iterator<Map.Entry<Key, Stamped>> it = entries.entrySet().iterator(); it.hasNext();) {
+                    Map.Entry<Key, Stamped> entry = it.next();
+                    final Stamped stamped = entry.getValue();
+                    if (entry.getKey().path.equals(path) && (stamped.lastModified != lastModified || stamped.size != size)) {
+                        it.remove();
+                    }
+                }
+            } else {
+                watchedPaths.remove(path);
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            generation++;
+            entries.clear();
+            canonicalPaths.clear();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    private String getCanonicalPath(File file) {
+        final String absolutePath = file.getAbsolutePath();
+        synchronized (entries) {
+            String path = canonicalPaths.get(absolutePath);
+            if (null != path) {
+                return path;
+            }
+        }
+        String path;
+        try {
+            path = file.getCanonicalPath();
+        } catch (IOException ex) {
+            path = absolutePath;
+        }
+        synchronized (entries) {
+            canonicalPaths.put(absolutePath, path);
+        }
+        return path;
+    }
+
+    /**
+     * Reads the settings on a cache miss. The returned map must not be
+     * modified afterwards, it is handed out as it is.
+     */
+    public interface Loader {
+
+        Map<String, String> load();
+    }
+
+    /**
+     * A configuration which has been removed from the cache.
+     */
+    public static final class CachedConfig {
+
+        private final File file;
+        private final String profile;
+        private final String sourceLevel;
+        private final String lineFeed;
+        private final Map<String, String> settings;
+
+        CachedConfig(File file, String profile, String sourceLevel, String lineFeed, Map<String, String> settings) {
+            this.file = file;
+            this.profile = profile;
+            this.sourceLevel = sourceLevel;
+            this.lineFeed = lineFeed;
+            this.settings = settings;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public String getProfile() {
+            return profile;
+        }
+
+        public String getSourceLevel() {
+            return sourceLevel;
+        }
+
+        public String getLineFeed() {
+            return lineFeed;
+        }
+
+        public Map<String, String> getSettings() {
+            return settings;
+        }
+    }
+
+    private static final class Stamped {
+
+        private final long lastModified;
+        private final long size;
+        private final Map<String, String> settings;
+
+        Stamped(long lastModified, long size, Map<String, String> settings) {
+            this.lastModified = lastModified;
+            this.size = size;
+            this.settings = settings;
+        }
+    }
+
+    private static final class Key {
+
+        private final String path;
+        private final String profile;
+        private final String sourceLevel;
+        private final String lineFeed;
+
+        Key(String path, String profile, String sourceLevel, String lineFeed) {
+            this.path = path;
+            this.profile = profile;
+            this.sourceLevel = sourceLevel;
+            this.lineFeed = lineFeed;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = 7;
+            hash = 31 * hash + path.hashCode();
+            hash = 31 * hash + (null != profile ? profile.hashCode() : 0);
+            hash = 31 * hash + (null != sourceLevel ? sourceLevel.hashCode() : 0);
+            hash = 31 * hash + (null != lineFeed ? lineFeed.hashCode() : 0);
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return path.equals(other.path)
+                    && equal(profile, other.profile)
+                    && equal(sourceLevel, other.sourceLevel)
+                    && equal(lineFeed, other.lineFeed);
+        }
+
+        private static boolean equal(String a, String b) {
+            return null == a ? null == b : a.equals(b);
+        }
+
+        @Override
+        public String toString() {
+            return "Key{" + "path=" + path + ", profile=" + profile + ", sourceLevel=" + sourceLevel + ", lineFeed=" + lineFeed + '}';
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2013-2016 markiewb.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    markiewb - initial API and implementation and/or initial documentation
+ */
+package de.markiewb.netbeans.plugins.eclipse.formatter.strategies.eclipse;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.openide.filesystems.FileChangeAdapter;
+import org.openide.filesystems.FileEvent;
+import org.openide.filesystems.FileRenameEvent;
+import org.openide.filesystems.FileUtil;
+import org.openide.util.RequestProcessor;
+
+/**
+ * Listens to the formatter config files in use. A change of such a file drops
+ * its cached settings and loads them again in the background, so that the next
+ * format finds the settings and a formatter for them ready.
+ *
+ * @author markiewb
+ */
+public final class ConfigFileWatcher {
+
+    private static final Logger LOG = Logger.getLogger(ConfigFileWatcher.class.getName());
+    private static final RequestProcessor RP = new RequestProcessor(ConfigFileWatcher.class.getName(), 1, true);
+    /**
+     * Delay in ms to coalesce the events of e.g. a VCS update.
+     */
+    private static final int REWARM_DELAY = 300;
+    private static final ConfigFileWatcher INSTANCE = new ConfigFileWatcher();
+
+    public static ConfigFileWatcher getDefault() {
+        return INSTANCE;
+    }
+
+    private final Map<String, Listener> listeners = new HashMap<>();
+    private final List<ConfigCache.CachedConfig> pending = new ArrayList<>();
+    private final RequestProcessor.Task rewarmTask = RP.create(new Runnable() {
+
+        @Override
+        public void run() {
+            rewarm();
+        }
+    });
+
+    ConfigFileWatcher() {
+    }
+
+    /**
+     * Starts listening to the given config file, if not already done.
+     *
+     * @return <code>true</code> if the file exists
+     */
+    public boolean watch(String formatterFile) {
+        Listener listener;
+        synchronized (listeners) {
+            listener = listeners.get(formatterFile);
+            if (null != listener) {
+                return listener.exists;
+            }
+        }
+        final File file = FileUtil.normalizeFile(new File(formatterFile));
+        synchronized (listeners) {
+            listener = listeners.get(formatterFile);
+            if (null != listener) {
+                return listener.exists;
+            }
+            listener = new Listener(file);
+            listener.exists = file.isFile();
+            listeners.put(formatterFile, listener);
+        }
+        FileUtil.addFileChangeListener(listener, file);
+        ConfigCache.getDefault().setWatched(file, true);
+        return listener.exists;
+    }
+
+    private void changed(File file) {
+        //the pooled formatters are keyed by the settings, so formatters of
+        //outdated settings are not used anymore and get evicted by the pool
+        List<ConfigCache.CachedConfig> removed = ConfigCache.getDefault().invalidate(file);
+        LOG.log(Level.FINE, "{0} changed, {1} cached configurations dropped", new Object[]{file, removed.size()});
+        if (!removed.isEmpty()) {
+            synchronized (pending) {
+                pending.addAll(removed);
+            }
+            rewarmTask.schedule(REWARM_DELAY);
+        }
+    }
+
+    private void rewarm() {
+        List<ConfigCache.CachedConfig> configs;
+        synchronized (pending) {
+            configs = new ArrayList<>(pending);
+            pending.clear();
+        }
+        for (ConfigCache.CachedConfig config : configs) {
+            final File file = config.getFile();
+            if (!file.isFile()) {
+                continue;
+            }
+            try {
+                new EclipseFormatter(file.getPath(), config.getProfile(), config.getLineFeed(), config.getSourceLevel()).prepare();
+            } catch (RuntimeException ex) {
+                //reported to the user on the next format
+                LOG.log(Level.FINE, "Could not reload " + file, ex);
+            }
+        }
+    }
+
+    private final class Listener extends FileChangeAdapter {
+
+        private final File file;
+        private volatile boolean exists;
+
+        Listener(File file) {
+            this.file = file;
+        }
+
+        @Override
+        public void fileDataCreated(FileEvent fe) {
+            exists = true;
+            changed(file);
+        }
+
+        @Override
+        public void fileChanged(FileEvent fe) {
+            changed(file);
+        }
+
+        @Override
+        public void fileDeleted(FileEvent fe) {
+            exists = false;
+            changed(file);
+        }
+
+        @Override
+        public void fileRenamed(FileRenameEvent fe) {
+            exists = file.isFile();
+            changed(file);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2013-2016 markiewb.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    markiewb - initial API and implementation and/or initial documentation
+ */
+package de.markiewb.netbeans.plugins.eclipse.formatter.strategies.eclipse;
+
+import java.util.Map;
+
+/**
+ * 64-bit fingerprint of an effective settings map. The value does not depend on
+ * the iteration order of the map, so equal settings always result in the same
+ * fingerprint.
+ *
+ * @author markiewb
+ */
+public final class ConfigFingerprint {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private ConfigFingerprint() {
+    }
+
+    public static long of(Map<String, String> settings) {
+        long result = settings.size();
+        for (Map.Entry<String, String> entry : settings.entrySet()) {
+            long hash = FNV_OFFSET;
+            hash = hash(hash, entry.getKey());
+            hash = (hash ^ '=') * FNV_PRIME;
+            hash = hash(hash, entry.getValue());
+            result += mix(hash);
+        }
+        return mix(result);
+    }
+
+    private static long hash(long hash, String value) {
+        if (null == value) {
+            return (hash ^ 0xff) * FNV_PRIME;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Finalizer of MurmurHash3, spreads the bits before the values are summed
+     * up.
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2013-2016 markiewb.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    markiewb - initial API and implementation and/or initial documentation
+ */
+package de.markiewb.netbeans.plugins.eclipse.formatter.strategies.eclipse;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Persists the effective settings of a configuration in a binary snapshot, so
+ * that the first format after a restart does not have to parse the config
+ * file again. A snapshot is stored under the
+ * {@link ConfigStore#contentKey(File, String, String, String) content key} of
+ * the configuration, so a changed config file simply does not find its old
+ * snapshot anymore.
+ * <p>
+ * The store is disabled until a {@link #setDirectory(File) directory} is set.
+ *
+ * @author markiewb
+ */
+public final class ConfigSnapshotStore {
+
+    private static final Logger LOG = Logger.getLogger(ConfigSnapshotStore.class.getName());
+    private static final int MAGIC = 0x45434653;
+    /**
+     * Increment, when the format or the way the effective settings are merged
+     * changes.
+     */
+    private static final int VERSION = 2;
+    private static final String SUFFIX = ".snapshot";
+    private static final int MAX_SNAPSHOTS = 64;
+    private static final ConfigSnapshotStore INSTANCE = new ConfigSnapshotStore();
+
+    public static ConfigSnapshotStore getDefault() {
+        return INSTANCE;
+    }
+
+    private volatile File directory;
+
+    ConfigSnapshotStore() {
+    }
+
+    public void setDirectory(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return the settings of the snapshot or <code>null</code> if there is no
+     * valid snapshot for the configuration
+     */
+    public Map<String, String> load(String contentKey) {
+        final File dir = directory;
+        if (null == dir) {
+            return null;
+        }
+        final File snapshot = new File(dir, contentKey + SUFFIX);
+        if (!snapshot.isFile()) {
+            return null;
+        }
+        try {
+            Map<String, String> settings = read(snapshot, contentKey);
+            if (null != settings) {
+                //keep recently used snapshots from being pruned
+                snapshot.setLastModified(System.currentTimeMillis());
+                return settings;
+            }
+        } catch (IOException ex) {
+            LOG.log(Level.FINE, "Could not read snapshot " + snapshot, ex);
+        }
+        snapshot.delete();
+        return null;
+    }
+
+    /**
+     * Writes a snapshot of the settings. Failures are only logged.
+     */
+    public void store(String contentKey, Map<String, String> settings) {
+        final File dir = directory;
+        if (null == dir) {
+            return;
+        }
+        File tmp = null;
+        try {
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                return;
+            }
+            tmp = File.createTempFile("snapshot", ".tmp", dir);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(contentKey);
+                out.writeInt(settings.size());
+                for (Map.Entry<String, String> entry : settings.entrySet()) {
+                    writeString(out, entry.getKey());
+                    writeString(out, entry.getValue());
+                }
+            }
+            Files.move(tmp.toPath(), new File(dir, contentKey + SUFFIX).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            tmp = null;
+        } catch (IOException ex) {
+            LOG.log(Level.FINE, "Could not write snapshot " + contentKey, ex);
+        } finally {
+            if (null != tmp) {
+                tmp.delete();
+            }
+        }
+    }
+
+    /**
+     * Puts the settings of the most recently used snapshots into the
+     * {@link ConfigStore} and deletes the rest.
+     *
+     * @return number of restored configurations
+     */
+    public int restore() {
+        final File dir = directory;
+        if (null == dir) {
+            return 0;
+        }
+        File[] snapshots = dir.listFiles();
+        if (null == snapshots) {
+            return 0;
+        }
+        Arrays.sort(snapshots, new Comparator<File>() {
+
+            @Override
+            public int compare(File o1, File o2) {
+                return Long.compare(o2.lastModified(), o1.lastModified());
+            }
+        });
+        int restored = 0;
+        for (File snapshot : snapshots) {
+            final String name = snapshot.getName();
+            if (!name.endsWith(SUFFIX)) {
+                continue;
+            }
+            if (restored < MAX_SNAPSHOTS) {
+                final String contentKey = name.substring(0, name.length() - SUFFIX.length());
+                try {
+                    Map<String, String> settings = read(snapshot, contentKey);
+                    if (null != settings) {
+                        ConfigStore.getDefault().put(contentKey, settings);
+                        restored++;
+                        continue;
+                    }
+                } catch (IOException ex) {
+                    LOG.log(Level.FINE, "Could not read snapshot " + snapshot, ex);
+                }
+            }
+            snapshot.delete();
+        }
+        return restored;
+    }
+
+    private static Map<String, String> read(File snapshot, String contentKey) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshot)))) {
+            if (MAGIC != in.readInt() || VERSION != in.readInt() || !contentKey.equals(in.readUTF())) {
+                return null;
+            }
+            final int size = in.readInt();
+            Map<String, String> settings = new HashMap<>(size * 4 / 3 + 1);
+            for (int i = 0; i < size; i++) {
+                settings.put(readString(in), readString(in));
+            }
+            return settings;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(null != value);
+        if (null != value) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
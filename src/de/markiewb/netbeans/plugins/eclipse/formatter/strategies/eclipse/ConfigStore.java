@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2013-2016 markiewb.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    markiewb - initial API and implementation and/or initial documentation
+ */
+package de.markiewb.netbeans.plugins.eclipse.formatter.strategies.eclipse;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Content-addressed store of effective settings. A configuration is
+ * identified by a hash of the content of its config file and the parameters
+ * it was resolved for, not by its path. So the many identical copies of
+ * <code>.settings/org.eclipse.jdt.core.prefs</code> in a multi-module
+ * workspace are parsed once.
+ * <p>
+ * Equal settings are interned: all configurations with the same effective
+ * settings share one immutable map, which also lets them share the pooled
+ * formatters of the {@link CodeFormatterPool}.
+ *
+ * @author markiewb
+ */
+public final class ConfigStore {
+
+    private static final int MAX_ENTRIES = 64;
+    private static final ConfigStore INSTANCE = new ConfigStore();
+
+    public static ConfigStore getDefault() {
+        return INSTANCE;
+    }
+
+    private final Map<String, Map<String, String>> byContent = new LinkedHashMap<String, Map<String, String>>(16, 0.75f, true) {
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Map<String, String>> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private final Map<Long, List<Map<String, String>>> interned = new HashMap<>();
+
+    ConfigStore() {
+    }
+
+    /**
+     * Hashes the content of the config file together with the parameters
+     * which influence the effective settings. The name of the file is part of
+     * the key, because it determines how the content is read.
+     *
+     * @return the hex encoded SHA-1
+     * @throws IOException if the file cannot be read
+     */
+    public static String contentKey(File file, String profile, String sourceLevel, String lineFeed) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+        final String parameters = file.getName() + '\u0000' + profile + '\u0000' + sourceLevel + '\u0000' + lineFeed + '\u0000';
+        digest.update(parameters.getBytes(StandardCharsets.UTF_8));
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        final byte[] bytes = digest.digest();
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the shared settings or <code>null</code>
+     */
+    public Map<String, String> get(String contentKey) {
+        synchronized (byContent) {
+            return byContent.get(contentKey);
+        }
+    }
+
+    /**
+     * Stores the settings under the given key.
+     *
+     * @return the shared immutable map with the same settings
+     */
+    public Map<String, String> put(String contentKey, Map<String, String> settings) {
+        final Long fingerprint = ConfigFingerprint.of(settings);
+        synchronized (byContent) {
+            Map<String, String> shared = null;
+            List<Map<String, String>> candidates = interned.get(fingerprint);
+            if (null == candidates) {
+                candidates = new ArrayList<>(1);
+                interned.put(fingerprint, candidates);
+            }
+            for (Map<String, String> candidate : candidates) {
+                if (candidate.equals(settings)) {
+                    shared = candidate;
+                    break;
+                }
+            }
+            if (null == shared) {
+                shared = Collections.unmodifiableMap(new HashMap<>(settings));
+                candidates.add(shared);
+            }
+            byContent.put(contentKey, shared);
+            pruneInterned();
+            return shared;
+        }
+    }
+
+    public void clear() {
+        synchronized (byContent) {
+            byContent.clear();
+            interned.clear();
+        }
+    }
+
+    /**
+     * Forgets the interned maps, which are not referenced by a content key
+     * anymore.
+     */
+    private void pruneInterned() {
+        if (interned.size() <= MAX_ENTRIES) {
+            return;
+        }
+        Map<Long, List<Map<String, String>>> used = new HashMap<>();
+        for (Map<String, String> settings : byContent.values()) {
+            final Long fingerprint = ConfigFingerprint.of(settings);
+            List<Map<String, String>> list = used.get(fingerprint);
+            if (null == list) {
+                list = new ArrayList<>(1);
+                used.put(fingerprint, list);
+            }
+            if (!containsIdentical(list, settings)) {
+                list.add(settings);
+            }
+        }
+        interned.clear();
+        interned.putAll(used);
+    }
+
+    private static boolean containsIdentical(List<Map<String, String>> list, Map<String, String> settings) {
+        for (Map<String, String> candidate : list) {
+            if (candidate == settings) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
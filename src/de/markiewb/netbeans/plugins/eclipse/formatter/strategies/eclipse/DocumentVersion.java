@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2013-2016 markiewb.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    markiewb - initial API and implementation and/or initial documentation
+ */
+package de.markiewb.netbeans.plugins.eclipse.formatter.strategies.eclipse;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+
+/**
+ * Counts the modifications of the text of a document, while it is attached as
+ * listener.
+ *
+ * @author markiewb
+ */
+final class DocumentVersion implements DocumentListener {
+
+    private final AtomicInteger version = new AtomicInteger();
+
+    int get() {
+        return version.get();
+    }
+
+    @Override
+    public void insertUpdate(DocumentEvent e) {
+        version.incrementAndGet();
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e) {
+        version.incrementAndGet();
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e) {
+        //attributes only
+    }
+}
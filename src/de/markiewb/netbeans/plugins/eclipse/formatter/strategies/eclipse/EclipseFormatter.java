@@ -11,51 +11,138 @@
  */
 package de.markiewb.netbeans.plugins.eclipse.formatter.strategies.eclipse;
 
-import de.markiewb.netbeans.plugins.eclipse.formatter.Pair;
-import de.markiewb.netbeans.plugins.eclipse.formatter.options.Preferences;
-import static de.markiewb.netbeans.plugins.eclipse.formatter.options.Preferences.getLineFeed;
+import de.markiewb.netbeans.plugins.eclipse.formatter.IntervalSet;
 import de.markiewb.netbeans.plugins.eclipse.formatter.xml.ConfigReadException;
 import de.markiewb.netbeans.plugins.eclipse.formatter.xml.ConfigReader;
+import de.markiewb.netbeans.plugins.eclipse.formatter.xml.PreferencesReader;
 import de.markiewb.netbeans.plugins.eclipse.formatter.xml.Profile;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Properties;
-import java.util.SortedSet;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
 import org.eclipse.jdt.core.JavaCore;
-import org.eclipse.jdt.core.ToolFactory;
 import org.eclipse.jdt.core.formatter.CodeFormatter;
 import org.eclipse.jdt.core.formatter.DefaultCodeFormatterConstants;
-import org.eclipse.jface.text.Document;
-import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.text.IRegion;
 import org.eclipse.text.edits.TextEdit;
-import org.openide.filesystems.FileUtil;
-import org.xml.sax.SAXException;
 
+/**
+ * Formats Java code with the Eclipse formatter. The class and the
+ * configuration handling it uses do not depend on the NetBeans APIs, so they
+ * can be used by the command line formatter as well.
+ */
 public final class EclipseFormatter {
 
     private static final Logger LOG = Logger.getLogger(EclipseFormatter.class.getName());
+    private static final String WARM_UP_CODE = "package warmup;\n"
+            + "import java.util.*;\n"
+            + "/** Javadoc */\n"
+            + "public class WarmUp<T extends Comparable<T>> implements Runnable {\n"
+            + "private final List<T> items=new ArrayList<>();\n"
+            + "@Override public void run(){for(int i=0;i<items.size();i++){if(items.get(i)==null){items.remove(i--);}else{System.out.println(\"item \"+i);}}}\n"
+            + "// comment\n"
+            + "enum Kind {A,B}\n"
+            + "}\n";
+    /**
+     * The markers of the guarded blocks of the GUI builder at the end of a
+     * line.
+     */
+    private static final Pattern GUARDED_BLOCK_MARKER = Pattern.compile("//GEN-(?:BEGIN|END|FIRST|LAST):[\\w$]*[ \\t]*$", Pattern.MULTILINE);
 
     private final String formatterFile;
     private final String formatterProfile;
     private final String lineFeedSetting;
     private final String sourceLevel;
+    private final boolean chunked;
 
     public EclipseFormatter(String formatterFile, String formatterProfile, String lineFeed, String sourceLevel) {
+        this(formatterFile, formatterProfile, lineFeed, sourceLevel, false);
+    }
+
+    /**
+     * @param chunked if <code>true</code>, very large compilation units are
+     * formatted in parallel chunks
+     */
+    public EclipseFormatter(String formatterFile, String formatterProfile, String lineFeed, String sourceLevel, boolean chunked) {
         this.formatterFile = formatterFile;
         this.formatterProfile = formatterProfile;
         this.lineFeedSetting = lineFeed;
         this.sourceLevel = sourceLevel;
+        this.chunked = chunked;
+    }
+
+    public static boolean isWorkspaceMechanicFile(String filename) {
+        return filename.endsWith("epf");
+    }
+
+    public static boolean isXMLConfigurationFile(String filename) {
+        return filename.endsWith("xml");
     }
 
-    public String forCode(final String code, int startOffset, int endOffset, SortedSet<Pair> changedElements) {
+    public static boolean isProjectSetting(String filename) {
+        return filename.endsWith("org.eclipse.jdt.core.prefs");
+    }
+
+    /**
+     * @return <code>true</code> if the code contains guarded blocks of the GUI
+     * builder, which must not be formatted
+     */
+    public static boolean hasGuardedBlocks(String code) {
+        return code.contains("//GEN-") && GUARDED_BLOCK_MARKER.matcher(code).find();
+    }
+
+    /**
+     * @param lineFeedSetting the escaped line separator like
+     * <code>\r\n</code>, empty or <code>null</code> for the platform default
+     * @return the line separator or <code>null</code> for the platform default
+     */
+    public static String getLineFeed(String lineFeedSetting) {
+        final boolean usePlatformLinefeed = null == lineFeedSetting || "".equals(lineFeedSetting);
+        String linefeed = null;
+        if (!usePlatformLinefeed) {
+
+            switch (lineFeedSetting) {
+                case "\\n":
+                    linefeed = "\n";
+                    break;
+                case "\\r":
+                    linefeed = "\r";
+                    break;
+                case "\\r\\n":
+                    linefeed = "\r\n";
+                    break;
+            }
+        }
+        return linefeed;
+    }
+
+    /**
+     * @return the configured line separator, otherwise the first line
+     * separator of the code or <code>null</code> for the platform default, if
+     * the code has a single line
+     */
+    public String getLineSeparator(String code) {
+        final String linefeed = getLineFeed(lineFeedSetting);
+        if (null != linefeed) {
+            return linefeed;
+        }
+        for (int i = 0; i < code.length(); i++) {
+            final char c = code.charAt(i);
+            if ('\n' == c) {
+                return "\n";
+            }
+            if ('\r' == c) {
+                return i + 1 < code.length() && '\n' == code.charAt(i + 1) ? "\r\n" : "\r";
+            }
+        }
+        return null;
+    }
+
+    public String forCode(final String code, int startOffset, int endOffset, IntervalSet changedElements) {
         String result = null;
         if (code != null) {
             result = this.format(code, startOffset, endOffset, changedElements);
@@ -63,44 +150,106 @@ public final class EclipseFormatter {
         return result;
     }
 
-    // returns null if format resulted in no change
-    private String format(final String code, int startOffset, int endOffset, SortedSet<Pair> changedElements) {
+    /**
+     * Checks the code without changing it.
+     *
+     * @return the offsets of the regions the formatter would change, empty if
+     * the code is formatted
+     * @throws IllegalStateException if the code cannot be formatted
+     */
+    public int[] findChanges(final String code) {
+        final TextEdit edit = computeEdits(code, 0, code.length(), null);
+        if (null == edit) {
+            throw new IllegalStateException("Code could not be formatted!");
+        }
+        final List<TextDelta> deltas = TextDelta.of(edit, code);
+        int[] offsets = new int[deltas.size()];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = deltas.get(i).offset;
+        }
+        return offsets;
+    }
+
+    /**
+     * Reads the configuration and creates a formatter for it, so that the
+     * next format does not have to.
+     */
+    public void prepare() {
+        Map<String, String> allConfig = readConfig();
+        final long fingerprint = ConfigFingerprint.of(allConfig);
+        CodeFormatterPool.getDefault().release(fingerprint, CodeFormatterPool.getDefault().acquire(fingerprint, allConfig));
+    }
+
+    /**
+     * @return the fingerprint of the effective configuration including the
+     * line separator
+     */
+    public long getConfigFingerprint() {
+        return ConfigFingerprint.of(readConfig()) * 31 + String.valueOf(getLineFeed(lineFeedSetting)).hashCode();
+    }
+
+    /**
+     * Formats a small compilation unit, so that the JDT classes are loaded
+     * and compiled before the user formats for the first time.
+     */
+    public void warmUp() {
+        forCode(WARM_UP_CODE, 0, WARM_UP_CODE.length(), null);
+    }
+
+    /**
+     * @return the edits which format the code or <code>null</code> if the code
+     * cannot be formatted
+     */
+    public TextEdit computeEdits(final String code, int startOffset, int endOffset, IntervalSet changedElements) {
         final int opts
                 = CodeFormatter.K_COMPILATION_UNIT + CodeFormatter.F_INCLUDE_COMMENTS /*+ CodeFormatter.K_CLASS_BODY_DECLARATIONS + CodeFormatter.K_STATEMENTS*/;
         Map<String, String> allConfig = readConfig();
+        final long fingerprint = ConfigFingerprint.of(allConfig);
+        //keep the line separator of the file, untouched regions are not converted
+        String linefeed = getLineSeparator(code);
+
+        final boolean wholeCode = (null == changedElements || changedElements.isEmpty()) && 0 == startOffset && code.length() == endOffset;
+        if (chunked && wholeCode && code.length() >= ChunkedFormatter.MIN_LENGTH) {
+            TextEdit edit = ChunkedFormatter.format(code, allConfig, fingerprint, linefeed);
+            if (null != edit) {
+                return edit;
+            }
+        }
 
-        CodeFormatter formatter = ToolFactory.createCodeFormatter(allConfig);
+        CodeFormatter formatter = CodeFormatterPool.getDefault().acquire(fingerprint, allConfig);
         //see http://help.eclipse.org/juno/index.jsp?topic=%2Forg.eclipse.jdt.doc.isv%2Freference%2Fapi%2Forg%2Feclipse%2Fjdt%2Fcore%2Fformatter%2FCodeFormatter.html&anchor=format(int,
 
-        String linefeed = getLineFeed(lineFeedSetting);
-        final TextEdit te;
-        // org.eclipse.jface.text.Region
-        List<IRegion> regions = new ArrayList<>();
-        if (null != changedElements && !changedElements.isEmpty()) {
-            for (Pair e : changedElements) {
-                final int length = e.getSecond() - e.getFirst();
-                regions.add(new org.eclipse.jface.text.Region(e.getFirst(), length));
+        try {
+            if (null != changedElements && !changedElements.isEmpty()) {
+                // org.eclipse.jface.text.Region
+                IRegion[] regions = new IRegion[changedElements.size()];
+                for (int i = 0; i < regions.length; i++) {
+                    final int start = changedElements.getStart(i);
+                    regions[i] = new org.eclipse.jface.text.Region(start, changedElements.getEnd(i) - start);
+                }
+                LOG.finest("use regions " + changedElements);
+                return formatter.format(opts, code, regions, 0, linefeed);
+            } else {
+                return formatter.format(opts, code, startOffset, endOffset - startOffset, 0, linefeed);
             }
-            LOG.finest("regions = " + regions);
-            IRegion[] toArray = regions.toArray(new IRegion[regions.size()]);
-            LOG.finest("use regions " + regions);
-            te = formatter.format(opts, code, toArray, 0, linefeed);
-        } else {
-            te = formatter.format(opts, code, startOffset, endOffset - startOffset, 0, linefeed);
+        } finally {
+            CodeFormatterPool.getDefault().release(fingerprint, formatter);
         }
+    }
 
-        final IDocument dc = new Document(code);
-        String formattedCode = null;
-        if ((te != null) && (te.getChildrenSize() > 0)) {
-            try {
-                te.apply(dc);
-            } catch (Exception ex) {
-                LOG.warning("Code could not be formatted!" + ex);
-                return null;
-            }
-            formattedCode = dc.get();
+    // returns null if format resulted in no change
+    private String format(final String code, int startOffset, int endOffset, IntervalSet changedElements) {
+        final List<TextDelta> deltas;
+        try {
+            deltas = TextDelta.of(computeEdits(code, startOffset, endOffset, changedElements), code);
+        } catch (IllegalStateException ex) {
+            LOG.warning("Code could not be formatted!" + ex);
+            return null;
+        }
+        if (deltas.isEmpty()) {
+            return null;
         }
-        return formattedCode;
+        return TextDelta.apply(code, deltas);
     }
 
     private Map<String, String> getSourceLevelOptions() {
@@ -123,32 +272,43 @@ public final class EclipseFormatter {
         return options;
     }
 
-    /**
-     *
-     * @return profile of <code>null</code> if profile with name not found
-     */
-    private Profile getProfileByName(List<Profile> profiles, String name) {
-        if (null == name) {
-            return null;
-        }
-        for (Profile profile : profiles) {
-            if (null != profile && name.equals(profile.getName())) {
-                return profile;
+    private Map<String, String> readConfig() throws ProfileNotFoundException {
+        final File file = new File(formatterFile);
+        return ConfigCache.getDefault().get(file, formatterProfile, sourceLevel, lineFeedSetting, new ConfigCache.Loader() {
+
+            @Override
+            public Map<String, String> load() {
+                final String contentKey;
+                try {
+                    contentKey = ConfigStore.contentKey(file, formatterProfile, sourceLevel, lineFeedSetting);
+                } catch (IOException ex) {
+                    LOG.warning("Could not load configuration: " + formatterFile + ex);
+                    throw new CannotLoadConfigurationException(ex);
+                }
+                Map<String, String> config = ConfigStore.getDefault().get(contentKey);
+                if (null != config) {
+                    return config;
+                }
+                config = ConfigSnapshotStore.getDefault().load(contentKey);
+                if (null == config) {
+                    config = loadConfig();
+                    ConfigSnapshotStore.getDefault().store(contentKey, config);
+                }
+                return ConfigStore.getDefault().put(contentKey, config);
             }
-        }
-        return null;
+        });
     }
 
-    private Map<String, String> readConfig() throws ProfileNotFoundException {
+    private Map<String, String> loadConfig() throws ProfileNotFoundException {
         Map<String, String> allConfig = new HashMap<>();
         try {
             final File file = new File(formatterFile);
             Map<String, String> configFromFile = new LinkedHashMap<>();
-            if (Preferences.isWorkspaceMechanicFile(formatterFile)) {
+            if (isWorkspaceMechanicFile(formatterFile)) {
                 configFromFile.putAll(readConfigFromWorkspaceMechanicFile(file));
-            } else if (Preferences.isXMLConfigurationFile(formatterFile)) {
+            } else if (isXMLConfigurationFile(formatterFile)) {
                 configFromFile.putAll(readConfigFromFormatterXmlFile(file));
-            } else if (Preferences.isProjectSetting(formatterFile)) {
+            } else if (isProjectSetting(formatterFile)) {
                 configFromFile.putAll(readConfigFromProjectSettings(file));
             }
 
@@ -175,50 +335,21 @@ public final class EclipseFormatter {
         return allConfig;
     }
 
-    private Map<String, String> readConfigFromFormatterXmlFile(final File file) throws ConfigReadException, ProfileNotFoundException, IOException, SAXException {
-        Map<String, String> configFromFile;
-        List<Profile> profiles = new ConfigReader().read(FileUtil.normalizeFile(file));
+    private Map<String, String> readConfigFromFormatterXmlFile(final File file) throws ConfigReadException, ProfileNotFoundException, IOException {
         String name = formatterProfile;
-        if (profiles.isEmpty()) {
-            //no config found
-            throw new ProfileNotFoundException("No profiles found in " + formatterFile);
-        }
-        Profile profile = getProfileByName(profiles, name);
+        Profile profile = new ConfigReader().readProfile(file, name);
         if (null == profile) {
             throw new ProfileNotFoundException("profile " + name + " not found in " + formatterFile);
         }
-        configFromFile = profile.getSettings();
-        return configFromFile;
+        return profile.getSettings();
     }
 
     private Map<String, String> readConfigFromWorkspaceMechanicFile(final File file) throws IOException {
-        Map<String, String> result = new LinkedHashMap<>();
-        Properties properties = new Properties();
-        try (FileInputStream is = new FileInputStream(file)) {
-            properties.load(is);
-        }
-        final String prefix = "/instance/org.eclipse.jdt.core/";
-        for (Object object : properties.keySet()) {
-            String key = (String) object;
-            if (key.startsWith(prefix)) {
-                String value = properties.getProperty(key);
-                result.put(key.substring(prefix.length()), value);
-            }
-        }
-        return result;
+        return new PreferencesReader().read(file, "/instance/org.eclipse.jdt.core/");
     }
 
     private Map<String, String> readConfigFromProjectSettings(final File file) throws IOException {
-        Map<String, String> result = new LinkedHashMap<>();
-        Properties properties = new Properties();
-        try (FileInputStream is = new FileInputStream(file)) {
-            properties.load(is);
-        }
-        for (Object object : properties.keySet()) {
-            String key = (String) object;
-            result.put(key, properties.getProperty(key));
-        }
-        return result;
+        return new PreferencesReader().read(file);
     }
 
     public class CannotLoadConfigurationException extends RuntimeException {
@@ -10,70 +10,39 @@
  */
 package de.markiewb.netbeans.plugins.eclipse.formatter.strategies.eclipse;
 
-import de.markiewb.netbeans.plugins.eclipse.formatter.Pair;
-import java.net.URI;
-import java.util.ArrayList;
-import java.util.Arrays;
+import de.markiewb.netbeans.plugins.eclipse.formatter.IntervalSet;
 import java.util.Collections;
 import java.util.List;
-import java.util.SortedSet;
-import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
 import javax.swing.text.StyledDocument;
-import org.netbeans.api.debugger.Breakpoint;
-import org.netbeans.api.debugger.DebuggerManager;
-import org.netbeans.api.debugger.jpda.ClassLoadUnloadBreakpoint;
-import org.netbeans.api.debugger.jpda.FieldBreakpoint;
 import org.netbeans.api.debugger.jpda.LineBreakpoint;
-import org.netbeans.api.debugger.jpda.MethodBreakpoint;
-import org.netbeans.api.project.FileOwnerQuery;
-import org.netbeans.api.project.Project;
-import org.netbeans.api.project.ProjectUtils;
-import org.netbeans.api.project.SourceGroup;
-import org.netbeans.api.project.Sources;
 import org.netbeans.modules.editor.NbEditorUtilities;
 import org.openide.filesystems.FileObject;
-import org.openide.filesystems.FileUtil;
 import org.openide.text.NbDocument;
 import org.openide.util.Exceptions;
-import org.openide.util.Utilities;
 
 /**
- * Formats the given document using the eclipse formatter. LineBreakpoints get
- * removed and the following breakpoints are getting reattached:
- * <ul>
- * <li>ClassLoadUnloadBreakpoint</li>
- * <li>FieldBreakpoint</li>
- * <li>MethodBreakpoint</li>
- * </ul>
+ * Formats the given document using the eclipse formatter. LineBreakpoints are
+ * moved to the new line of their statement. Class based breakpoints are left
+ * untouched, as formatting does not change the names of the types.
  */
 class EclipseFormatterRunnable implements Runnable {
 
     private static final Logger LOG = Logger.getLogger(EclipseFormatterRunnable.class.getName());
 
-    private static boolean isSameTypeOrInnerType(String className, String fqnOfTopMostType) {
-        if (null == className) {
-            return false;
-        }
-        if (null == fqnOfTopMostType) {
-            return false;
-        }
-        if (className.equals(fqnOfTopMostType)) {
-            return true;
-        }
-        //Support innerTypes like com.company.Foo$InnerClass
-        return className.startsWith(fqnOfTopMostType + "$");
-    }
-    private final SortedSet<Pair> changedElements;
+    private final IntervalSet changedElements;
     private final StyledDocument document;
     private final int endOffset;
     private final FileObject fileObject;
     private final EclipseFormatter formatter;
     private final boolean preserveBreakpoints;
     private final int startOffset;
+    private final boolean wholeDocument;
+    private FormattedState formattedState;
 
-    EclipseFormatterRunnable(StyledDocument document, EclipseFormatter formatter, int dot, int mark, boolean preserveBreakpoints, SortedSet<Pair> changedElements) {
+    EclipseFormatterRunnable(StyledDocument document, EclipseFormatter formatter, int dot, int mark, boolean preserveBreakpoints, IntervalSet changedElements) {
         this.document = document;
         this.fileObject = NbEditorUtilities.getFileObject(document);
         this.formatter = formatter;
@@ -86,199 +55,148 @@ class EclipseFormatterRunnable implements Runnable {
         }
         this.preserveBreakpoints = preserveBreakpoints;
         this.changedElements = changedElements;
+        this.wholeDocument = dot == mark && (null == changedElements || changedElements.isEmpty());
     }
 
     @Override
     public void run() {
         try {
-            final String docText;
-            try {
-                docText = document.getText(0, document.getLength());
-            } catch (BadLocationException ex) {
-                Exceptions.printStackTrace(ex);
+            final String docText = readText();
+            if (null == docText) {
                 return;
             }
-            final String formattedContent = formatter.forCode(docText, startOffset, endOffset, changedElements);
-            // quick check for changed
-            if (formattedContent != null && /*does not support changes of EOL*/ !formattedContent.equals(docText)) {
-                DebuggerManager debuggerManager = DebuggerManager.getDebuggerManager();
-                List<Breakpoint> breakpoint2Keep = Collections.emptyList();
-                if (preserveBreakpoints) {
-                    final Breakpoint[] breakpoints = debuggerManager.getBreakpoints();
-                    //a) remove all line breakpoints before replacing the text in the editor
-                    //b) hold all other breakpoints from the current file, so that they can be reattached
-                    //FIXME guess the main class by its filepath relative to src/com/foo/Bar.java -> com.foo.Bar
-                    final String classNameOfTopMostTypeInFile = getFQNOfTopMostType(fileObject);
-                    int lineStart = NbDocument.findLineNumber(document, startOffset);
-                    int lineEnd = NbDocument.findLineNumber(document, endOffset);
-                    List<Breakpoint> lineBreakPoints = getLineBreakpoints(breakpoints, fileObject, lineStart, lineEnd);
-                    for (Breakpoint breakpoint : lineBreakPoints) {
-                        debuggerManager.removeBreakpoint(breakpoint);
-                    }
-                    breakpoint2Keep = getPreserveableBreakpoints(breakpoints, classNameOfTopMostTypeInFile);
-                    //Remove all breakpoints from the current file (else they would be invalided)
-                    for (Breakpoint breakpoint : breakpoint2Keep) {
-                        debuggerManager.removeBreakpoint(breakpoint);
-                    }
-                }
-                //runAtomicAsUser, so that removal and insert is only one undo step
-                NbDocument.runAtomicAsUser(document, new Runnable() {
-                    @Override
-                    public void run() {
-                        try {
-                            document.remove(startOffset, endOffset - startOffset);
-                            document.insertString(startOffset, formattedContent.substring(startOffset, endOffset + formattedContent.length() - docText.length()), null);
-                        } catch (BadLocationException ex) {
-                            Exceptions.printStackTrace(ex);
-                        }
-                    }
-                });
-                if (preserveBreakpoints) {
-                    //Reattach breakpoints where possible
-                    for (Breakpoint breakpoint : breakpoint2Keep) {
-                        debuggerManager.addBreakpoint(breakpoint);
-                    }
-                }
-            }
+            apply(format(docText), null, 0);
         } catch (Exception ex) {
             Exceptions.printStackTrace(ex);
         }
     }
+
     /**
-     * Copied from org.netbeans.modules.maven.classpath.MavenSourcesImpl. These
-     * constants where not public API, so they are duplicated in here.
-     * https://github.com/markiewb/nb-resource-hyperlink-at-cursor/issues/9
+     * @return the text of the document or <code>null</code>
      */
-    public static final String MAVEN_TYPE_OTHER = "Resources"; //NOI18N
-    public static final String MAVEN_TYPE_TEST_OTHER = "TestResources"; //NOI18N
-    public static final String MAVEN_TYPE_GEN_SOURCES = "GeneratedSources"; //NOI18N
+    String readText() {
+        try {
+            return document.getText(0, document.getLength());
+        } catch (BadLocationException ex) {
+            Exceptions.printStackTrace(ex);
+            return null;
+        }
+    }
 
     /**
-     * http://bits.netbeans.org/dev/javadoc/org-netbeans-modules-java-project/constant-values.html#org.netbeans.api.java.project.SOURCES_HINT_TEST
-     *
+     * @return the changes, which format the text; no changes if the text is
+     * known to be formatted with the current configuration
      */
-    public static final String SOURCES_HINT_MAIN = "main";
-    public static final String SOURCES_HINT_TEST = "test";
-    public static final String SOURCES_TYPE_JAVA = "java";
-    public static final String SOURCES_TYPE_RESOURCES = "resources";
-
-    private List<SourceGroup> getAllSourceGroups(Project p) {
-        final Sources sources = ProjectUtils.getSources(p);
-        List<SourceGroup> list = new ArrayList<SourceGroup>();
-        list.addAll(Arrays.asList(sources.getSourceGroups(SOURCES_TYPE_JAVA)));
-        list.addAll(Arrays.asList(sources.getSourceGroups(SOURCES_TYPE_RESOURCES)));
-        list.addAll(Arrays.asList(sources.getSourceGroups(SOURCES_HINT_TEST)));
-        list.addAll(Arrays.asList(sources.getSourceGroups(SOURCES_HINT_MAIN)));
-        list.addAll(Arrays.asList(sources.getSourceGroups(MAVEN_TYPE_GEN_SOURCES)));
-        list.addAll(Arrays.asList(sources.getSourceGroups(MAVEN_TYPE_OTHER)));
-        list.addAll(Arrays.asList(sources.getSourceGroups(MAVEN_TYPE_TEST_OTHER)));
-        return list;
+    List<TextDelta> format(String docText) {
+        final long configFingerprint = formatter.getConfigFingerprint();
+        if (FormattedState.isFormatted(document, docText, configFingerprint)) {
+            LOG.finest("skip formatting, the document is already formatted");
+            return Collections.emptyList();
+        }
+        final List<TextDelta> deltas = TextDelta.of(formatter.computeEdits(docText, startOffset, endOffset, changedElements), docText);
+        if (wholeDocument) {
+            formattedState = FormattedState.of(docText, deltas, configFingerprint);
+        }
+        return deltas;
     }
 
-    private String getFQNOfTopMostType(FileObject fo) throws IllegalArgumentException {
-        if (null == fo) {
-            return "";
+    /**
+     * Applies the changes to the document back to front, so that only the
+     * changed whitespace is touched.
+     *
+     * @param version if not <code>null</code>, the document is only modified
+     * if its version still equals <code>expectedVersion</code>
+     * @return <code>false</code> if the document has been changed in the
+     * meantime and the changes could not be applied
+     */
+    boolean apply(final List<TextDelta> deltas, final DocumentVersion version, final int expectedVersion) throws BadLocationException {
+        // quick check for changed
+        if (deltas.isEmpty()) {
+            storeFormattedState();
+            return true;
         }
-        Project p = FileOwnerQuery.getOwner(fo);
-        if (null == p) {
-            return "";
+        if (null != version && version.get() != expectedVersion) {
+            return false;
         }
-        for (SourceGroup sourceGroup : getAllSourceGroups(p)) {
-            //SourceGroup: c:/myprojects/project/src/main/java/
-            //OriginFolder: c:/myprojects/project/src/main/java/com/foo/impl
-            //Result: com/foo/impl (!=null so we found the source root)
-            final FileObject rootFolder = sourceGroup.getRootFolder();
-            if (null == rootFolder) {
-                continue;
+        //the index answers files without breakpoints without touching the debugger
+        final List<LineBreakpoint> breakpoints = preserveBreakpoints && null != fileObject
+                ? BreakpointIndex.getDefault().getLineBreakpoints(fileObject) : Collections.<LineBreakpoint>emptyList();
+        final int[] lines = new int[breakpoints.size()];
+        final boolean[] applied = new boolean[1];
+        //runAtomicAsUser, so that removal and insert is only one undo step
+        NbDocument.runAtomicAsUser(document, new Runnable() {
+            @Override
+            public void run() {
+                if (null != version && version.get() != expectedVersion) {
+                    return;
+                }
+                try {
+                    final int[] anchors = getAnchors(breakpoints, deltas.get(0).offset);
+                    for (int i = deltas.size() - 1; i >= 0; i--) {
+                        final TextDelta delta = deltas.get(i);
+                        if (delta.length > 0) {
+                            document.remove(delta.offset, delta.length);
+                        }
+                        if (!delta.text.isEmpty()) {
+                            document.insertString(delta.offset, delta.text, null);
+                        }
+                    }
+                    for (int i = 0; i < anchors.length; i++) {
+                        lines[i] = -1 == anchors[i] ? -1 : NbDocument.findLineNumber(document, TextDelta.map(deltas, anchors[i])) + 1;
+                    }
+                    applied[0] = true;
+                    storeFormattedState();
+                } catch (BadLocationException ex) {
+                    Exceptions.printStackTrace(ex);
+                }
             }
-            String relative = FileUtil.getRelativePath(rootFolder, fo);
-            if (null != relative) {
-                String result = relative.replaceAll("/", ".");
-                if (result.toLowerCase().endsWith(".java")) {
-                    result = result.substring(0, result.length() - ".java".length());
+        });
+        if (applied[0]) {
+            //move the LineBreakpoints along with their statements, outside of the document lock
+            for (int i = 0; i < lines.length; i++) {
+                final LineBreakpoint breakpoint = breakpoints.get(i);
+                if (-1 != lines[i] && breakpoint.getLineNumber() != lines[i]) {
+                    breakpoint.setLineNumber(lines[i]);
                 }
-                return result;
             }
         }
-        return "";
+        return applied[0] || null == version || version.get() == expectedVersion;
     }
 
-    private List<Breakpoint> getLineBreakpoints(Breakpoint[] breakpoints, FileObject fileOfCurrentClass, int lineStart, int lineEnd) throws IllegalArgumentException {
-        List<Breakpoint> result = new ArrayList<>();
-        for (Breakpoint breakpoint : breakpoints) {
-            /**
-             * NOTE: ExceptionBreakpoint/ThreadBreakpoint have no annotation in
-             * file, so they cannot be removed by the formatter
-             */
-            /**
-             * Remove LineBreakpoints, because setting the new text for the
-             * document invalidates the breakpoints
-             */
-            if (breakpoint instanceof LineBreakpoint) {
-                LineBreakpoint lineBreakpoint = (LineBreakpoint) breakpoint;
-                String url = lineBreakpoint.getURL();
-                if (null == url) {
-                    continue;
-                }
-                int current = lineBreakpoint.getLineNumber();
-                final boolean isBreakpointInSelection = lineStart <= current && current <= lineEnd;
-                if (!isBreakpointInSelection) {
-                    continue;
-                }
-                if (url.startsWith("jar:file:")) {
-                    //https://github.com/markiewb/eclipsecodeformatter_for_netbeans/issues/80 
-                    //prevent URI is not hierarchical.
-                    continue;
-                }
-                FileObject toFileObject;
-                try {
-                    toFileObject = FileUtil.toFileObject(FileUtil.normalizeFile(Utilities.toFile(new URI(url))));
-                } catch (Exception ex) {
-                    LOG.log(Level.WARNING, "{0} cannot be converted to URI/File: {1}. Please report to https://github.com/markiewb/eclipsecodeformatter_for_netbeans/issues/55", new Object[]{url, ex.getMessage()});
-                    continue;
-                }
-                if (null == toFileObject) {
-                    continue;
-                }
-                if (fileOfCurrentClass.equals(toFileObject)) {
-                    result.add(breakpoint);
-                }
-            }
+    private void storeFormattedState() {
+        if (null != formattedState) {
+            formattedState.storeIn(document);
         }
-        return result;
     }
 
-    private List<Breakpoint> getPreserveableBreakpoints(Breakpoint[] breakpoints, String currentClassName) throws IllegalArgumentException {
-        List<Breakpoint> result = new ArrayList<>();
-        for (Breakpoint breakpoint : breakpoints) {
-            if (breakpoint instanceof ClassLoadUnloadBreakpoint) {
-                for (String classname : ((ClassLoadUnloadBreakpoint) breakpoint).getClassFilters()) {
-                    if (isSameTypeOrInnerType(classname, currentClassName)) {
-                        result.add(breakpoint);
-                    }
-                }
+    /**
+     * @param firstChange offset of the first change
+     * @return the offset of the first non-whitespace character of the line of
+     * each LineBreakpoint or -1, if the line cannot move
+     */
+    private int[] getAnchors(List<LineBreakpoint> breakpoints, int firstChange) throws BadLocationException {
+        final int[] anchors = new int[breakpoints.size()];
+        final Element root = NbDocument.findLineRootElement(document);
+        for (int i = 0; i < anchors.length; i++) {
+            anchors[i] = -1;
+            //line numbers of breakpoints are 1-based
+            final int line = breakpoints.get(i).getLineNumber() - 1;
+            if (line < 0 || line >= root.getElementCount()) {
+                continue;
             }
-            if (breakpoint instanceof FieldBreakpoint) {
-                if (isSameTypeOrInnerType(((FieldBreakpoint) breakpoint).getClassName(), currentClassName)) {
-                    result.add(breakpoint);
-                }
+            final Element element = root.getElement(line);
+            final int end = Math.min(element.getEndOffset(), document.getLength());
+            if (end <= firstChange) {
+                continue;
             }
-            if (breakpoint instanceof MethodBreakpoint) {
-                for (String className : ((MethodBreakpoint) breakpoint).getClassFilters()) {
-                    if (isSameTypeOrInnerType(className, currentClassName)) {
-                        result.add(breakpoint);
-                    }
-                }
+            int anchor = element.getStartOffset();
+            final String text = document.getText(anchor, end - anchor);
+            for (int j = 0; j < text.length() && Character.isWhitespace(text.charAt(j)) && '\n' != text.charAt(j); j++) {
+                anchor++;
             }
-            /**
-             * NOTE: ExceptionBreakpoint/ThreadBreakpoint have no annotation in
-             * file, so they cannot be removed by the formatter
-             */
-            /**
-             * NOTE: LineBreakpoint is not supported
-             */
+            anchors[i] = anchor;
         }
-        return result;
+        return anchors;
     }
 
 }
@@ -10,14 +10,29 @@
  */
 package de.markiewb.netbeans.plugins.eclipse.formatter.strategies.eclipse;
 
-import de.markiewb.netbeans.plugins.eclipse.formatter.Pair;
+import de.markiewb.netbeans.plugins.eclipse.formatter.IntervalSet;
+import de.markiewb.netbeans.plugins.eclipse.formatter.Utilities;
 import de.markiewb.netbeans.plugins.eclipse.formatter.strategies.ParameterObject;
 import de.markiewb.netbeans.plugins.eclipse.formatter.strategies.IFormatterStrategy;
-import java.util.SortedSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import javax.swing.SwingUtilities;
 import javax.swing.text.JTextComponent;
 import javax.swing.text.StyledDocument;
+import org.openide.awt.NotificationDisplayer;
+import org.openide.awt.StatusDisplayer;
 import org.openide.util.Exceptions;
+import org.openide.util.RequestProcessor;
 
 /**
  *
@@ -25,6 +40,26 @@ import org.openide.util.Exceptions;
  */
 public class EclipseFormatterStrategy implements IFormatterStrategy {
 
+    private static final Logger LOG = Logger.getLogger(EclipseFormatterStrategy.class.getName());
+    static final int THREADS = 4;
+    /**
+     * Formattings abandoned by the save action keep running until JDT returns,
+     * so more than one thread is needed.
+     */
+    private static final RequestProcessor RP = new RequestProcessor(EclipseFormatterStrategy.class.getName(), THREADS, true);
+    private static final long CANCEL_POLL_INTERVAL = TimeUnit.MILLISECONDS.toNanos(50);
+    /**
+     * Documents, whose abandoned formatting is still running. JDT cannot be
+     * interrupted, so no further formatting is submitted for such a document
+     * and once all {@link #THREADS} threads of {@link #RP} are blocked by
+     * abandoned formattings, nothing is submitted at all.
+     */
+    private static final Set<StyledDocument> ABANDONED = Collections.newSetFromMap(new WeakHashMap<StyledDocument, Boolean>());
+    private static final int NEW = 0;
+    private static final int RUNNING = 1;
+    private static final int FINISHED = 2;
+    private static final int GIVEN_UP = 3;
+
     /**
      *
      * @param document
@@ -36,7 +71,7 @@ public class EclipseFormatterStrategy implements IFormatterStrategy {
         final int selectionStart = po.selectionStart;
         final int selectionEnd = po.selectionEnd;
         final boolean forSave = po.forSave;
-        final SortedSet<Pair> changedElements = po.changedElements;
+        final IntervalSet changedElements = po.changedElements;
         final StyledDocument document = po.styledDoc;
         final JTextComponent editor = po.editor;
         final int caret = po.caret;
@@ -44,24 +79,141 @@ public class EclipseFormatterStrategy implements IFormatterStrategy {
         final int _dot = (!forSave) ? selectionStart : -1;
         final int _mark = (!forSave) ? selectionEnd : -1;
         final int _caret = caret;
+        final Runnable setCaret = new Runnable() {
+            @Override
+            public void run() {
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        //Set caret after the formatting, if possible
+                        if (editor != null && _caret > 0) {
+                            final int car = Math.max(0, Math.min(_caret, editor.getDocument().getLength()));
+                            editor.setCaretPosition(car);
+                            editor.requestFocus();
+                            editor.requestFocusInWindow();
+                        }
+                    }
+                });
+            }
+        };
+        if (!forSave) {
+            //report configuration problems to the caller, before going to the background
+            formatter.prepare();
+            //the save has to wait for the formatting, but the action does not
+            new AsyncFormatTask(document, formatter, _dot, _mark, preserveBreakpoints, changedElements, setCaret).start();
+            return;
+        }
         try {
             final EclipseFormatterRunnable formatterRunnable = new EclipseFormatterRunnable(document, formatter, _dot, _mark, preserveBreakpoints, changedElements);
-            formatterRunnable.run();
-            SwingUtilities.invokeLater(new Runnable() {
+            final String docText = formatterRunnable.readText();
+            if (null == docText) {
+                return;
+            }
+            final List<TextDelta> deltas = formatWithinBudget(new Callable<List<TextDelta>>() {
+
                 @Override
-                public void run() {
-                    //Set caret after the formatting, if possible
-                    if (editor != null && _caret > 0) {
-                        final int car = Math.max(0, Math.min(_caret, editor.getDocument().getLength()));
-                        editor.setCaretPosition(car);
-                        editor.requestFocus();
-                        editor.requestFocusInWindow();
-                    }
+                public List<TextDelta> call() {
+                    return formatterRunnable.format(docText);
                 }
-            });
+            }, po);
+            if (null == deltas) {
+                //save unformatted
+                return;
+            }
+            formatterRunnable.apply(deltas, null, 0);
+            setCaret.run();
         } catch (Exception e) {
             Exceptions.printStackTrace(e);
         }
     }
 
+    /**
+     * Formats in the background and waits at most for the time budget of the
+     * parameter object. The budget starts, when the formatting is submitted,
+     * so the time spent waiting for a thread is counted too.
+     *
+     * @return the changes or <code>null</code> if the formatting has been
+     * cancelled, has taken too long or an abandoned formatting of the document
+     * is still running
+     */
+    static List<TextDelta> formatWithinBudget(final Callable<List<TextDelta>> format, final ParameterObject po) throws Exception {
+        if (po.timeBudget <= 0) {
+            return format.call();
+        }
+        final StyledDocument document = po.styledDoc;
+        synchronized (ABANDONED) {
+            if (ABANDONED.contains(document) || ABANDONED.size() >= THREADS) {
+                final String msg = "A previous formatting has not finished yet, the file has been saved unformatted";
+                LOG.info(msg);
+                StatusDisplayer.getDefault().setStatusText(msg);
+                return null;
+            }
+        }
+        final AtomicInteger state = new AtomicInteger(NEW);
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(po.timeBudget);
+        final Future<List<TextDelta>> future = RP.submit(new Callable<List<TextDelta>>() {
+
+            @Override
+            public List<TextDelta> call() throws Exception {
+                if (po.cancelled || !state.compareAndSet(NEW, RUNNING)) {
+                    return null;
+                }
+                try {
+                    return format.call();
+                } finally {
+                    synchronized (ABANDONED) {
+                        if (!state.compareAndSet(RUNNING, FINISHED)) {
+                            ABANDONED.remove(document);
+                        }
+                    }
+                }
+            }
+        });
+        try {
+            while (!po.cancelled) {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    LOG.log(Level.INFO, "Formatting on save abandoned after {0} ms", po.timeBudget);
+                    final String msg = String.format("Formatting took longer than %s ms, the file has been saved unformatted", po.timeBudget);
+                    NotificationDisplayer.getDefault().notify("Formatting on save abandoned", Utilities.iconEclipse, msg, null);
+                    StatusDisplayer.getDefault().setStatusText(msg);
+                    break;
+                }
+                try {
+                    //wake up regularly to notice a cancellation
+                    return future.get(Math.min(remaining, CANCEL_POLL_INTERVAL), TimeUnit.NANOSECONDS);
+                } catch (TimeoutException ex) {
+                    //continue waiting
+                }
+            }
+            abandon(future, state, document);
+            return null;
+        } catch (InterruptedException ex) {
+            abandon(future, state, document);
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Gives up the formatting. A formatting, which has not started yet, will
+     * not run; a running one is remembered until JDT returns.
+     */
+    private static void abandon(Future<?> future, AtomicInteger state, StyledDocument document) {
+        synchronized (ABANDONED) {
+            if (state.compareAndSet(RUNNING, GIVEN_UP)) {
+                ABANDONED.add(document);
+            } else {
+                state.compareAndSet(NEW, GIVEN_UP);
+            }
+        }
+        future.cancel(true);
+    }
+
 }
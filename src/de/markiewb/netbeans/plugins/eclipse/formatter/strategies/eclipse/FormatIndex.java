@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2013-2016 markiewb.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    markiewb - initial API and implementation and/or initial documentation
+ */
+package de.markiewb.netbeans.plugins.eclipse.formatter.strategies.eclipse;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Remembers the files, which are known to be formatted, so that batch runs only
+ * have to format the files changed since the last run. A file is known to be
+ * formatted, if its size and modification time or the hash of its content
+ * equal the recorded ones and it was formatted with the same configuration.
+ * <p>
+ * The index is stored in a file of fixed size records, which is read and
+ * written with a single buffer. Paths are stored as 64-bit hashes. The file
+ * is not memory mapped, as a mapped file cannot be replaced on Windows.
+ *
+ * @author markiewb
+ */
+public final class FormatIndex {
+
+    private static final Logger LOG = Logger.getLogger(FormatIndex.class.getName());
+    private static final int MAGIC = 0x45434649;
+    private static final int VERSION = 1;
+    private static final int HEADER = 16;
+    /**
+     * path hash, size, modification time, content hash, config fingerprint,
+     * flags and padding
+     */
+    private static final int RECORD = 48;
+    private static final int FORMATTED = 1;
+    /**
+     * A modification time this close to the time it is recorded may be shared
+     * by a later change of the same size, so it is not trusted.
+     */
+    private static final long RACY_MILLIS = 2000;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long UNKNOWN = -1;
+
+    private final File file;
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    private volatile boolean modified;
+
+    private FormatIndex(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Reads the index. A missing, outdated or corrupt index file results in an
+     * empty index.
+     */
+    public static FormatIndex open(File file) {
+        FormatIndex index = new FormatIndex(file);
+        if (file.isFile()) {
+            try {
+                index.read();
+            } catch (IOException | RuntimeException ex) {
+                LOG.log(Level.FINE, "Could not read format index " + file, ex);
+                index.entries.clear();
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @return <code>true</code> if the file is known to be formatted without
+     * reading it
+     */
+    public boolean isFormatted(String path, long size, long lastModified, long configFingerprint) {
+        Entry entry = entries.get(hash(path));
+        return null != entry && entry.formatted && entry.configFingerprint == configFingerprint
+                && entry.size == size && entry.lastModified == lastModified && UNKNOWN != lastModified;
+    }
+
+    /**
+     * @param contentHash {@link #hash(byte[]) hash} of the content
+     * @return <code>true</code> if the content is known to be formatted
+     */
+    public boolean isFormatted(String path, long contentHash, long configFingerprint) {
+        Entry entry = entries.get(hash(path));
+        return null != entry && entry.formatted && entry.configFingerprint == configFingerprint
+                && entry.contentHash == contentHash;
+    }
+
+    /**
+     * Records the state of a file.
+     *
+     * @param formatted <code>true</code> if the content is formatted
+     */
+    public void put(String path, long size, long lastModified, long contentHash, long configFingerprint, boolean formatted) {
+        final long recorded = System.currentTimeMillis() - lastModified < RACY_MILLIS ? UNKNOWN : lastModified;
+        entries.put(hash(path), new Entry(size, recorded, contentHash, configFingerprint, formatted));
+        modified = true;
+    }
+
+    public void remove(String path) {
+        if (null != entries.remove(hash(path))) {
+            modified = true;
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Writes the index, if it has been modified. The file is replaced
+     * atomically, so a concurrent or aborted run never sees a partial index.
+     */
+    public void save() throws IOException {
+        if (!modified) {
+            return;
+        }
+        final File dir = file.getAbsoluteFile().getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create " + dir);
+        }
+        File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+        try {
+            final int capacity = entries.size();
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER + capacity * RECORD);
+            buffer.position(HEADER);
+            int count = 0;
+            for (Map.Entry<Long, Entry> e : entries.entrySet()) {
+                if (count == capacity) {
+                    //grown concurrently, the rest is recorded next time
+                    break;
+                }
+                final Entry entry = e.getValue();
+                buffer.putLong(e.getKey()).putLong(entry.size).putLong(entry.lastModified)
+                        .putLong(entry.contentHash).putLong(entry.configFingerprint)
+                        .putInt(entry.formatted ? FORMATTED : 0).putInt(0);
+                count++;
+            }
+            //shrunk concurrently, only the written records count
+            buffer.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, count).putInt(12, 0);
+            buffer.flip();
+            try (FileOutputStream out = new FileOutputStream(tmp); FileChannel channel = out.getChannel()) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            }
+            try {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            modified = false;
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    /**
+     * @return 64-bit FNV-1a hash of the bytes
+     */
+    public static long hash(byte[] bytes) {
+        long hash = FNV_OFFSET;
+        for (byte b : bytes) {
+            hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private static long hash(String path) {
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < path.length(); i++) {
+            hash = (hash ^ path.charAt(i)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private void read() throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        final long length = buffer.remaining();
+        if (length < HEADER) {
+            return;
+        }
+        if (MAGIC != buffer.getInt() || VERSION != buffer.getInt()) {
+            return;
+        }
+        final int count = buffer.getInt();
+        buffer.getInt();
+        if (count < 0 || HEADER + (long) count * RECORD != length) {
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            final long path = buffer.getLong();
+            final Entry entry = new Entry(buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getLong(),
+                    0 != (buffer.getInt() & FORMATTED));
+            buffer.getInt();
+            entries.put(path, entry);
+        }
+    }
+
+    private static final class Entry {
+
+        final long size;
+        final long lastModified;
+        final long contentHash;
+        final long configFingerprint;
+        final boolean formatted;
+
+        Entry(long size, long lastModified, long contentHash, long configFingerprint, boolean formatted) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.contentHash = contentHash;
+            this.configFingerprint = configFingerprint;
+            this.formatted = formatted;
+        }
+    }
+}
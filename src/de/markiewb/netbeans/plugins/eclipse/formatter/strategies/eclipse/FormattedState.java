@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2013-2016 markiewb.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    markiewb - initial API and implementation and/or initial documentation
+ */
+package de.markiewb.netbeans.plugins.eclipse.formatter.strategies.eclipse;
+
+import java.util.List;
+import javax.swing.text.Document;
+
+/**
+ * Remembers per document the length and a 64-bit hash of the last text, which
+ * was produced by or verified against the formatter, together with the
+ * fingerprint of the configuration. If the text and the configuration are
+ * unchanged, formatting it again would not change anything.
+ *
+ * @author markiewb
+ */
+final class FormattedState {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final int length;
+    private final long hash;
+    private final long configFingerprint;
+
+    private FormattedState(int length, long hash, long configFingerprint) {
+        this.length = length;
+        this.hash = hash;
+        this.configFingerprint = configFingerprint;
+    }
+
+    /**
+     * @return <code>true</code> if the text of the document is known to be
+     * formatted with the given configuration
+     */
+    static boolean isFormatted(Document document, CharSequence text, long configFingerprint) {
+        Object value = document.getProperty(FormattedState.class);
+        if (!(value instanceof FormattedState)) {
+            return false;
+        }
+        FormattedState state = (FormattedState) value;
+        return state.configFingerprint == configFingerprint
+                && state.length == text.length()
+                && state.hash == hash(FNV_OFFSET, text, 0, text.length());
+    }
+
+    /**
+     * Creates the state of the text, which results from applying the deltas,
+     * without creating that text.
+     */
+    static FormattedState of(CharSequence original, List<TextDelta> deltas, long configFingerprint) {
+        long hash = FNV_OFFSET;
+        int length = original.length();
+        int position = 0;
+        for (TextDelta delta : deltas) {
+            hash = hash(hash, original, position, delta.offset);
+            hash = hash(hash, delta.text, 0, delta.text.length());
+            position = delta.offset + delta.length;
+            length += delta.text.length() - delta.length;
+        }
+        hash = hash(hash, original, position, original.length());
+        return new FormattedState(length, hash, configFingerprint);
+    }
+
+    /**
+     * Remembers the state for the document. Has to be called only after the
+     * text of the document equals the text the state has been created for.
+     */
+    void storeIn(Document document) {
+        document.putProperty(FormattedState.class, this);
+    }
+
+    private static long hash(long hash, CharSequence text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            hash = (hash ^ text.charAt(i)) * FNV_PRIME;
+        }
+        return hash;
+    }
+}
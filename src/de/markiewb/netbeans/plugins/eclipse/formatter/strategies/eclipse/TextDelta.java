@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2013-2016 markiewb.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    markiewb - initial API and implementation and/or initial documentation
+ */
+package de.markiewb.netbeans.plugins.eclipse.formatter.strategies.eclipse;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.eclipse.jface.text.Document;
+import org.eclipse.text.edits.DeleteEdit;
+import org.eclipse.text.edits.InsertEdit;
+import org.eclipse.text.edits.MultiTextEdit;
+import org.eclipse.text.edits.ReplaceEdit;
+import org.eclipse.text.edits.TextEdit;
+
+/**
+ * A minimal replacement of a range of the original text. The deltas of a
+ * {@link TextEdit} tree are sorted by offset and do not overlap, so they can be
+ * applied back to front without adjusting the offsets.
+ *
+ * @author markiewb
+ */
+final class TextDelta {
+
+    final int offset;
+    final int length;
+    final String text;
+
+    TextDelta(int offset, int length, String text) {
+        this.offset = offset;
+        this.length = length;
+        this.text = text;
+    }
+
+    /**
+     * Collects the leaf edits of the tree. The parts of a replacement, which
+     * equal the original text, are trimmed and edits without an effect are
+     * skipped.
+     *
+     * @param edit the edits or <code>null</code>
+     * @param original the text the edits were computed for
+     * @return the deltas in ascending order
+     */
+    static List<TextDelta> of(TextEdit edit, CharSequence original) {
+        if (null == edit) {
+            return Collections.emptyList();
+        }
+        List<TextDelta> result = new ArrayList<>();
+        if (!collect(edit, original, result)) {
+            //unknown kind of edit, compare the complete results instead
+            result.clear();
+            Document document = new Document(original.toString());
+            try {
+                edit.apply(document);
+            } catch (Exception ex) {
+                throw new IllegalStateException("Code could not be formatted!", ex);
+            }
+            add(result, original, 0, original.length(), document.get());
+        }
+        return result;
+    }
+
+    /**
+     * Applies the deltas in one pass.
+     *
+     * @param deltas deltas of the original text in ascending order
+     * @return the changed text
+     */
+    static String apply(CharSequence original, List<TextDelta> deltas) {
+        int length = original.length();
+        for (TextDelta delta : deltas) {
+            length += delta.text.length() - delta.length;
+        }
+        StringBuilder sb = new StringBuilder(length);
+        int position = 0;
+        for (TextDelta delta : deltas) {
+            sb.append(original, position, delta.offset).append(delta.text);
+            position = delta.offset + delta.length;
+        }
+        sb.append(original, position, original.length());
+        return sb.toString();
+    }
+
+    /**
+     * Maps an offset of the original text to the changed text. An offset
+     * within a replaced region is mapped to the end of the replacement.
+     *
+     * @param deltas deltas of the original text in ascending order
+     */
+    static int map(List<TextDelta> deltas, int offset) {
+        int shift = 0;
+        for (TextDelta delta : deltas) {
+            if (delta.offset > offset) {
+                break;
+            }
+            if (delta.offset + delta.length > offset) {
+                return delta.offset + shift + delta.text.length();
+            }
+            shift += delta.text.length() - delta.length;
+        }
+        return offset + shift;
+    }
+
+    private static boolean collect(TextEdit edit, CharSequence original, List<TextDelta> result) {
+        if (edit instanceof ReplaceEdit) {
+            add(result, original, edit.getOffset(), edit.getLength(), ((ReplaceEdit) edit).getText());
+        } else if (edit instanceof InsertEdit) {
+            add(result, original, edit.getOffset(), 0, ((InsertEdit) edit).getText());
+        } else if (edit instanceof DeleteEdit) {
+            add(result, original, edit.getOffset(), edit.getLength(), "");
+        } else if (!(edit instanceof MultiTextEdit)) {
+            return false;
+        }
+        for (TextEdit child : edit.getChildren()) {
+            if (!collect(child, original, result)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void add(List<TextDelta> result, CharSequence original, int offset, int length, String text) {
+        int prefix = 0;
+        final int max = Math.min(length, text.length());
+        while (prefix < max && original.charAt(offset + prefix) == text.charAt(prefix)) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < max - prefix && original.charAt(offset + length - 1 - suffix) == text.charAt(text.length() - 1 - suffix)) {
+            suffix++;
+        }
+        final int newLength = length - prefix - suffix;
+        final int newEnd = text.length() - suffix;
+        if (0 == newLength && prefix == newEnd) {
+            return;
+        }
+        result.add(new TextDelta(offset + prefix, newLength, text.substring(prefix, newEnd)));
+    }
+
+    @Override
+    public String toString() {
+        return "TextDelta{" + "offset=" + offset + ", length=" + length + ", text=" + text + '}';
+    }
+}
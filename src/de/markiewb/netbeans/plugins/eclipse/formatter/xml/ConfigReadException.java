@@ -14,4 +14,8 @@ public class ConfigReadException extends Exception {
                 super(message);
         }
 
+        public ConfigReadException(String message, Throwable cause) {
+                super(message, cause);
+        }
+
 }
@@ -1,54 +1,203 @@
 package de.markiewb.netbeans.plugins.eclipse.formatter.xml;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import org.apache.commons.digester3.Digester;
-import org.openide.filesystems.FileUtil;
-
-import org.xml.sax.SAXException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 /**
- * This class reads a config file for Eclipse code formatter.
+ * This class reads a config file for Eclipse code formatter. The file is
+ * parsed with a streaming StAX reader, so only the profiles which are
+ * requested get materialized.
  *
  * @author jecki
  * @author Matt Blanchette
  */
 public class ConfigReader {
 
+    private static final String ELEMENT_PROFILES = "profiles";
+    private static final String ELEMENT_PROFILE = "profile";
+    private static final String ELEMENT_SETTING = "setting";
+
+    private static final XMLInputFactory FACTORY = createFactory();
+
+    private static XMLInputFactory createFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+        return factory;
+    }
+
     /**
      * Read from the
      * <code>input</code> and return it's configuration settings as a
      * {@link Map}.
      *
-     * @param input
-     * @return return {@link Map} with all the configurations read from the
-     * config file, or throws an exception if there's a problem reading the
-     * input, e.g.: invalid XML.
-     * @throws SAXException
+     * @param normalizedFile
+     * @return return all profiles of the kind
+     * {@link Profiles#PROFILE_KIND} read from the config file, or throws an
+     * exception if there's a problem reading the input, e.g.: invalid XML.
+     * @throws IOException
+     * @throws ConfigReadException
+     */
+    public List<Profile> read(File normalizedFile) throws IOException, ConfigReadException {
+        return parse(normalizedFile, null).getProfiles();
+    }
+
+    /**
+     * Read only the profile with the given name. Parsing stops as soon as the
+     * profile has been read, the settings of all other profiles are skipped.
+     *
+     * @param normalizedFile
+     * @param name name of the profile
+     * @return the profile or <code>null</code> if there is no profile with
+     * that name
      * @throws IOException
      * @throws ConfigReadException
      */
-    public List<Profile> read(File normalizedFile) throws IOException, SAXException, ConfigReadException {
-        Digester digester = new Digester();
-        digester.addRuleSet(new RuleSet());
-        Object result = null;
-        InputStream configInput = FileUtil.toFileObject(normalizedFile).getInputStream();
-        try {
-            result = digester.parse(configInput);
-        } finally {
+    public Profile readProfile(File normalizedFile, String name) throws IOException, ConfigReadException {
+        if (null == name) {
+            return null;
+        }
+        List<Profile> profiles = parse(normalizedFile, name).getProfiles();
+        return profiles.isEmpty() ? null : profiles.get(0);
+    }
+
+    /**
+     * Read the attributes of all profiles in the file without their settings.
+     *
+     * @param normalizedFile
+     * @return headers of all profiles in the file, regardless of their kind
+     * @throws IOException
+     * @throws ConfigReadException
+     */
+    public List<ProfileHeader> readProfileHeaders(File normalizedFile) throws IOException, ConfigReadException {
+        try (InputStream configInput = new BufferedInputStream(new FileInputStream(normalizedFile))) {
+            XMLStreamReader reader = createReader(configInput);
             try {
-                configInput.close();
-            } catch (IOException e) {
+                return parseHeaders(reader);
+            } finally {
+                reader.close();
             }
+        } catch (XMLStreamException ex) {
+            throw new ConfigReadException("Invalid config file " + normalizedFile + ": " + ex.getMessage(), ex);
         }
-        if (result == null && !(result instanceof Profiles)) {
+    }
+
+    /**
+     * @param profileName if not <code>null</code> only the first profile with
+     * this name is read
+     */
+    private Profiles parse(File file, String profileName) throws IOException, ConfigReadException {
+        try (InputStream configInput = new BufferedInputStream(new FileInputStream(file))) {
+            XMLStreamReader reader = createReader(configInput);
+            try {
+                return parse(reader, profileName);
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException ex) {
+            throw new ConfigReadException("Invalid config file " + file + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    private static XMLStreamReader createReader(InputStream configInput) throws XMLStreamException {
+        synchronized (FACTORY) {
+            return FACTORY.createXMLStreamReader(configInput);
+        }
+    }
+
+    private Profiles parse(XMLStreamReader reader, String profileName) throws XMLStreamException, ConfigReadException {
+        Profiles profiles = null;
+        Profile profile = null;
+        int depth = 0;
+        while (reader.hasNext()) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    depth++;
+                    final String element = reader.getLocalName();
+                    if (1 == depth) {
+                        if (!ELEMENT_PROFILES.equals(element)) {
+                            throw new ConfigReadException("No profiles found in config file");
+                        }
+                        profiles = new Profiles();
+                    } else if (2 == depth && ELEMENT_PROFILE.equals(element)) {
+                        profile = readProfileHeader(reader);
+                        if (null != profileName && !profileName.equals(profile.getName())) {
+                            //not the requested one, do not read the settings
+                            profile = null;
+                        }
+                    } else if (3 == depth && null != profile && ELEMENT_SETTING.equals(element)) {
+                        profile.addSetting(reader.getAttributeValue(null, "id"), reader.getAttributeValue(null, "value"));
+                    }
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    if (2 == depth && null != profile) {
+                        final int before = profiles.getProfiles().size();
+                        profiles.addProfile(profile);
+                        profile = null;
+                        if (null != profileName && profiles.getProfiles().size() > before) {
+                            //requested profile found, skip the rest of the file
+                            return profiles;
+                        }
+                    }
+                    depth--;
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (null == profiles) {
+            throw new ConfigReadException("No profiles found in config file");
+        }
+        return profiles;
+    }
+
+    private List<ProfileHeader> parseHeaders(XMLStreamReader reader) throws XMLStreamException, ConfigReadException {
+        List<ProfileHeader> headers = null;
+        int depth = 0;
+        while (reader.hasNext()) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    depth++;
+                    final String element = reader.getLocalName();
+                    if (1 == depth) {
+                        if (!ELEMENT_PROFILES.equals(element)) {
+                            throw new ConfigReadException("No profiles found in config file");
+                        }
+                        headers = new ArrayList<>();
+                    } else if (2 == depth && ELEMENT_PROFILE.equals(element)) {
+                        headers.add(new ProfileHeader(reader.getAttributeValue(null, "kind"), reader.getAttributeValue(null, "version"), reader.getAttributeValue(null, "name")));
+                    }
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    depth--;
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (null == headers) {
             throw new ConfigReadException("No profiles found in config file");
         }
-        Profiles profiles = (Profiles) result;
-        return profiles.getProfiles();
+        return headers;
     }
-    
+
+    private static Profile readProfileHeader(XMLStreamReader reader) {
+        Profile profile = new Profile();
+        profile.setKind(reader.getAttributeValue(null, "kind"));
+        profile.setName(reader.getAttributeValue(null, "name"));
+        profile.setVersion(reader.getAttributeValue(null, "version"));
+        return profile;
+    }
+
 }
@@ -0,0 +1,185 @@
+package de.markiewb.netbeans.plugins.eclipse.formatter.xml;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads the key/value pairs of a Workspace Mechanic file (*.epf) or of an
+ * Eclipse project setting (org.eclipse.jdt.core.prefs) line by line. Both are
+ * written in the format of {@link java.util.Properties}, so the same escapes,
+ * comments and line continuations are supported. Unlike
+ * {@link java.util.Properties} the entries are kept in the order of the file
+ * and no synchronized hashtable is filled.
+ *
+ * @author markiewb
+ */
+public class PreferencesReader {
+
+    /**
+     * @param file
+     * @return all entries of the file in the order of the file
+     * @throws IOException
+     */
+    public Map<String, String> read(File file) throws IOException {
+        return read(file, null);
+    }
+
+    /**
+     * @param file
+     * @param prefix if not <code>null</code> only the entries with keys
+     * starting with the prefix are returned, the prefix is removed from the
+     * keys
+     * @return the matching entries in the order of the file
+     * @throws IOException
+     */
+    public Map<String, String> read(File file, String prefix) throws IOException {
+        Map<String, String> result = new LinkedHashMap<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.ISO_8859_1))) {
+            StringBuilder logicalLine = null;
+            String line;
+            while (null != (line = reader.readLine())) {
+                int start = skipWhitespace(line, 0);
+                if (null == logicalLine) {
+                    if (start == line.length()) {
+                        //blank line
+                        continue;
+                    }
+                    final char first = line.charAt(start);
+                    if ('#' == first || '!' == first) {
+                        //comment
+                        continue;
+                    }
+                    logicalLine = new StringBuilder(line.length());
+                }
+                if (isContinued(line)) {
+                    logicalLine.append(line, start, line.length() - 1);
+                    continue;
+                }
+                logicalLine.append(line, start, line.length());
+                addEntry(logicalLine, prefix, result);
+                logicalLine = null;
+            }
+            if (null != logicalLine) {
+                addEntry(logicalLine, prefix, result);
+            }
+        }
+        return result;
+    }
+
+    private static void addEntry(CharSequence line, String prefix, Map<String, String> result) {
+        final int length = line.length();
+        int keyEnd = 0;
+        boolean hasSeparator = false;
+        while (keyEnd < length) {
+            final char c = line.charAt(keyEnd);
+            if ('\\' == c) {
+                keyEnd += 2;
+                continue;
+            }
+            if ('=' == c || ':' == c) {
+                hasSeparator = true;
+                break;
+            }
+            if (isWhitespace(c)) {
+                break;
+            }
+            keyEnd++;
+        }
+        keyEnd = Math.min(keyEnd, length);
+        int valueStart = skipWhitespace(line, keyEnd);
+        if (!hasSeparator && valueStart < length) {
+            final char c = line.charAt(valueStart);
+            if ('=' == c || ':' == c) {
+                hasSeparator = true;
+            }
+        }
+        if (hasSeparator) {
+            valueStart = skipWhitespace(line, valueStart + 1);
+        }
+        final String key = unescape(line, 0, keyEnd);
+        if (null != prefix) {
+            if (!key.startsWith(prefix)) {
+                return;
+            }
+            result.put(key.substring(prefix.length()), unescape(line, valueStart, length));
+        } else {
+            result.put(key, unescape(line, valueStart, length));
+        }
+    }
+
+    private static String unescape(CharSequence line, int start, int end) {
+        StringBuilder sb = null;
+        for (int i = start; i < end; i++) {
+            final char c = line.charAt(i);
+            if ('\\' != c) {
+                if (null != sb) {
+                    sb.append(c);
+                }
+                continue;
+            }
+            if (null == sb) {
+                sb = new StringBuilder(end - start);
+                sb.append(line, start, i);
+            }
+            i++;
+            if (i >= end) {
+                break;
+            }
+            final char escaped = line.charAt(i);
+            switch (escaped) {
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'u':
+                    if (i + 4 < end) {
+                        sb.append((char) Integer.parseInt(line.subSequence(i + 1, i + 5).toString(), 16));
+                        i += 4;
+                    } else {
+                        throw new IllegalArgumentException("Malformed \\uxxxx encoding.");
+                    }
+                    break;
+                default:
+                    sb.append(escaped);
+                    break;
+            }
+        }
+        return null != sb ? sb.toString() : line.subSequence(start, end).toString();
+    }
+
+    /**
+     * A line is continued if it ends with an odd number of backslashes.
+     */
+    private static boolean isContinued(String line) {
+        int count = 0;
+        for (int i = line.length() - 1; i >= 0 && '\\' == line.charAt(i); i--) {
+            count++;
+        }
+        return count % 2 == 1;
+    }
+
+    private static int skipWhitespace(CharSequence line, int index) {
+        while (index < line.length() && isWhitespace(line.charAt(index))) {
+            index++;
+        }
+        return index;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return ' ' == c || '\t' == c || '\f' == c;
+    }
+}
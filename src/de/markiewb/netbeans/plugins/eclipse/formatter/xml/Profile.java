@@ -21,8 +21,8 @@ public class Profile {
     public Profile() {
     }
 
-    public void addSetting(Setting setting) {
-        settings.put(setting.getId(), setting.getValue());
+    public void addSetting(String id, String value) {
+        settings.put(id, value);
     }
 
     public Map<String, String> getSettings() {
@@ -0,0 +1,46 @@
+package de.markiewb.netbeans.plugins.eclipse.formatter.xml;
+
+/**
+ * The attributes of a profile XML element in the Eclipse formatter config file
+ * without its settings.
+ *
+ * @author markiewb
+ */
+public final class ProfileHeader {
+
+    private final String kind;
+    private final String version;
+    private final String name;
+
+    public ProfileHeader(String kind, String version, String name) {
+        this.kind = kind;
+        this.version = version;
+        this.name = name;
+    }
+
+    public String getKind() {
+        return kind;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return <code>true</code> if this is a profile of the kind
+     * {@link Profiles#PROFILE_KIND}
+     */
+    public boolean isCodeFormatterProfile() {
+        return Profiles.PROFILE_KIND.equals(kind);
+    }
+
+    @Override
+    public String toString() {
+        return "ProfileHeader{" + "kind=" + kind + ", version=" + version + ", name=" + name + '}';
+    }
+
+}
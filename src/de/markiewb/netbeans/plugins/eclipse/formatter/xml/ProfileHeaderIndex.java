@@ -0,0 +1,79 @@
+package de.markiewb.netbeans.plugins.eclipse.formatter.xml;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Caches the profile headers of formatter config files, so that the options
+ * dialogs do not have to scan a file again as long as it is unchanged.
+ *
+ * @author markiewb
+ */
+public final class ProfileHeaderIndex {
+
+    private static final int MAX_ENTRIES = 16;
+    private static final ProfileHeaderIndex INSTANCE = new ProfileHeaderIndex();
+
+    public static ProfileHeaderIndex getDefault() {
+        return INSTANCE;
+    }
+
+    private final Map<String, Headers> entries = new LinkedHashMap<String, Headers>(16, 0.75f, true) {
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Headers> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    ProfileHeaderIndex() {
+    }
+
+    /**
+     * @param file formatter config file
+     * @return immutable list of the headers of all profiles of the kind
+     * {@link Profiles#PROFILE_KIND} in the file
+     * @throws IOException
+     * @throws ConfigReadException
+     */
+    public List<ProfileHeader> getHeaders(File file) throws IOException, ConfigReadException {
+        final String path = file.getCanonicalPath();
+        final long lastModified = file.lastModified();
+        final long size = file.length();
+        synchronized (entries) {
+            Headers entry = entries.get(path);
+            if (null != entry && entry.lastModified == lastModified && entry.size == size) {
+                return entry.headers;
+            }
+        }
+        List<ProfileHeader> headers = new ArrayList<>();
+        for (ProfileHeader header : new ConfigReader().readProfileHeaders(file)) {
+            if (header.isCodeFormatterProfile()) {
+                headers.add(header);
+            }
+        }
+        final Headers entry = new Headers(lastModified, size, Collections.unmodifiableList(headers));
+        synchronized (entries) {
+            entries.put(path, entry);
+        }
+        return entry.headers;
+    }
+
+    private static final class Headers {
+
+        private final long lastModified;
+        private final long size;
+        private final List<ProfileHeader> headers;
+
+        Headers(long lastModified, long size, List<ProfileHeader> headers) {
+            this.lastModified = lastModified;
+            this.size = size;
+            this.headers = headers;
+        }
+    }
+}
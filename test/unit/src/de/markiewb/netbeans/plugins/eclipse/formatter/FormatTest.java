@@ -125,6 +125,20 @@ public class FormatTest {
         assertEquals("Formatting should change the code", expected, actual);
     }
 
+    @Test
+    public void testFormatUsingLinefeed_OfFile() {
+        EclipseFormatter formatter = new EclipseFormatter("D:\\ws\\eclipsecodeformatter_for_netbeans\\test\\unit\\src\\org.eclipse.jdt.core.prefs", null, null, null);
+        final String text = "package foo;\r\npublic enum NewEmptyJUnitTest { A, B, C}";
+        final String expected = "package foo;\r\n"
+                + "\r\n"
+                + "public enum NewEmptyJUnitTest {\r\n"
+                + "			       A,\r\n"
+                + "				   B,\r\n"
+                + "				   C}";
+        String actual = formatter.forCode(text, 0, text.length() - 1, null);
+        assertEquals("The line separator of the code should be kept", expected, actual);
+    }
+
     @Test
     public void testFormatSourceLevel_1dot3() {
         EclipseFormatter formatter = new EclipseFormatter("D:\\ws\\eclipsecodeformatter_for_netbeans\\test\\unit\\src\\org.eclipse.jdt.core.prefs", null, "\\n", "1.3");
@@ -156,4 +170,20 @@ public class FormatTest {
         String actual = formatter.forCode(text, 0, text.length() - 1, null);
         assertEquals("Invalid source code for 1.4 - enum is not a keyword", expected, actual);
     }
+
+    @Test
+    public void testFindChanges() {
+        EclipseFormatter formatter = new EclipseFormatter("D:\\ws\\eclipsecodeformatter_for_netbeans\\test\\unit\\src\\org.eclipse.jdt.core.prefs", null, "\\n", null);
+        final String text = "package foo;public enum NewEmptyJUnitTest { A, B, C}";
+        int[] actual = formatter.findChanges(text);
+        assertEquals("Unformatted code should have changes", true, actual.length > 0);
+        assertEquals("The first change follows the package declaration", 12, actual[0]);
+    }
+
+    @Test
+    public void testFindChanges_Formatted() {
+        EclipseFormatter formatter = new EclipseFormatter("D:\\ws\\eclipsecodeformatter_for_netbeans\\test\\unit\\src\\org.eclipse.jdt.core.prefs", null, "\\n", null);
+        final String text = formatter.forCode("package foo;public enum NewEmptyJUnitTest { A, B, C}", 0, 52, null);
+        assertEquals("Formatted code should not have changes", 0, formatter.findChanges(text).length);
+    }
 }
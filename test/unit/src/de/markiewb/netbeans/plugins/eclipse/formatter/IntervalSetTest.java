@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2013-2016 markiewb.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    markiewb - initial API and implementation and/or initial documentation
+ */
+package de.markiewb.netbeans.plugins.eclipse.formatter;
+
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author markiewb
+ */
+public class IntervalSetTest {
+
+    @Test
+    public void testAddSorted() {
+        IntervalSet set = new IntervalSet(1);
+        set.add(20, 30);
+        set.add(0, 5);
+        set.add(10, 15);
+
+        assertEquals("IntervalSet{[0, 5), [10, 15), [20, 30)}", set.toString());
+    }
+
+    @Test
+    public void testMergeOverlapping() {
+        IntervalSet set = new IntervalSet();
+        set.add(0, 10);
+        set.add(5, 15);
+
+        assertEquals("IntervalSet{[0, 15)}", set.toString());
+    }
+
+    @Test
+    public void testMergeAdjacent() {
+        IntervalSet set = new IntervalSet();
+        set.add(0, 10);
+        set.add(10, 20);
+
+        assertEquals(1, set.size());
+        assertEquals(0, set.getStart(0));
+        assertEquals(20, set.getEnd(0));
+    }
+
+    @Test
+    public void testMergeSpanningSeveral() {
+        IntervalSet set = new IntervalSet();
+        set.add(0, 2);
+        set.add(4, 6);
+        set.add(8, 10);
+        set.add(20, 30);
+        set.add(1, 9);
+
+        assertEquals("IntervalSet{[0, 10), [20, 30)}", set.toString());
+    }
+
+    @Test
+    public void testContained() {
+        IntervalSet set = new IntervalSet();
+        set.add(0, 100);
+        set.add(10, 20);
+
+        assertEquals("IntervalSet{[0, 100)}", set.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalid() {
+        new IntervalSet().add(10, 5);
+    }
+
+    @Test
+    public void testInsert() {
+        IntervalSet set = new IntervalSet();
+        set.add(0, 2);
+        set.add(5, 10);
+        set.add(20, 30);
+        set.insert(6, 3);
+
+        assertEquals("IntervalSet{[0, 2), [5, 13), [23, 33)}", set.toString());
+    }
+
+    @Test
+    public void testRemove() {
+        IntervalSet set = new IntervalSet();
+        set.add(0, 2);
+        set.add(5, 6);
+        set.add(8, 10);
+        set.add(20, 30);
+        set.remove(2, 6);
+
+        assertEquals("IntervalSet{[0, 4), [14, 24)}", set.toString());
+    }
+
+    @Test
+    public void testRandomAgainstBitmap() {
+        Random random = new Random(4711);
+        for (int run = 0; run < 200; run++) {
+            IntervalSet set = new IntervalSet(1);
+            boolean[] covered = new boolean[200];
+            for (int i = 0; i < 20; i++) {
+                int start = random.nextInt(190);
+                int end = start + 1 + random.nextInt(10);
+                set.add(start, end);
+                for (int j = start; j < end; j++) {
+                    covered[j] = true;
+                }
+            }
+            int index = 0;
+            for (int j = 0; j < covered.length; j++) {
+                if (covered[j] && (0 == j || !covered[j - 1])) {
+                    assertEquals(j, set.getStart(index));
+                }
+                if (covered[j] && (j == covered.length - 1 || !covered[j + 1])) {
+                    assertEquals(j + 1, set.getEnd(index));
+                    index++;
+                }
+            }
+            assertEquals(index, set.size());
+        }
+    }
+}
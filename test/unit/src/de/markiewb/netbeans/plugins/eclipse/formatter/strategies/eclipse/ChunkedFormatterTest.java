@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2013-2016 markiewb.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    markiewb - initial API and implementation and/or initial documentation
+ */
+package de.markiewb.netbeans.plugins.eclipse.formatter.strategies.eclipse;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.ToolFactory;
+import org.eclipse.jdt.core.formatter.CodeFormatter;
+import org.eclipse.jdt.core.formatter.DefaultCodeFormatterConstants;
+import org.eclipse.text.edits.TextEdit;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Compares the chunked format of large compilation units with the format of
+ * the whole unit.
+ *
+ * @author markiewb
+ */
+public class ChunkedFormatterTest {
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue("chunks are only formatted in parallel", ChunkedFormatter.THREADS >= 2);
+    }
+
+    @Test
+    public void testChunkedEqualsWhole() {
+        assertChunkedEqualsWhole(generate(1, false), settings("1.7"));
+    }
+
+    @Test
+    public void testChunkedEqualsWholeWithoutIndentedMembers() {
+        Map<String, String> settings = settings("1.6");
+        settings.put(DefaultCodeFormatterConstants.FORMATTER_INDENT_BODY_DECLARATIONS_COMPARE_TO_TYPE_HEADER, DefaultCodeFormatterConstants.FALSE);
+        assertChunkedEqualsWhole(generate(2, false), settings);
+    }
+
+    @Test
+    public void testIgnoredOffTagsAreChunked() {
+        assertChunkedEqualsWhole(generate(3, true), settings("1.5"));
+    }
+
+    @Test
+    public void testOffTagsAreNotChunked() {
+        Map<String, String> settings = settings("1.8");
+        settings.put(DefaultCodeFormatterConstants.FORMATTER_USE_ON_OFF_TAGS, DefaultCodeFormatterConstants.TRUE);
+        final String code = generate(4, true);
+
+        assertNull(ChunkedFormatter.format(code, settings, ConfigFingerprint.of(settings), "\n"));
+        assertNotNull("without tags", ChunkedFormatter.format(generate(4, false), settings, ConfigFingerprint.of(settings), "\n"));
+    }
+
+    /**
+     * Only the first results of a configuration are verified against the
+     * whole unit, so the following ones are compared here.
+     */
+    private static void assertChunkedEqualsWhole(String code, Map<String, String> settings) {
+        assertTrue(code.length() > ChunkedFormatter.MIN_LENGTH);
+        final CodeFormatter formatter = ToolFactory.createCodeFormatter(settings);
+        final TextEdit whole = formatter.format(CodeFormatter.K_COMPILATION_UNIT | CodeFormatter.F_INCLUDE_COMMENTS, code, 0, code.length(), 0, "\n");
+        final String expected = TextDelta.apply(code, TextDelta.of(whole, code));
+        final long fingerprint = ConfigFingerprint.of(settings);
+        for (int i = 0; i <= ChunkedFormatter.VERIFICATIONS; i++) {
+            final TextEdit chunked = ChunkedFormatter.format(code, settings, fingerprint, "\n");
+            assertNotNull("formatted in chunks " + i, chunked);
+            assertEquals("result " + i, expected, TextDelta.apply(code, TextDelta.of(chunked, code)));
+        }
+    }
+
+    private static Map<String, String> settings(String sourceLevel) {
+        Map<String, String> settings = new HashMap<>(DefaultCodeFormatterConstants.getEclipseDefaultSettings());
+        settings.put(JavaCore.COMPILER_SOURCE, sourceLevel);
+        settings.put(JavaCore.COMPILER_COMPLIANCE, sourceLevel);
+        settings.put(JavaCore.COMPILER_CODEGEN_TARGET_PLATFORM, sourceLevel);
+        return settings;
+    }
+
+    /**
+     * @return unformatted code with comments next to the member boundaries,
+     * unindented members and nested member types. The first and the last
+     * member are plain, as types with comments around them are not split.
+     */
+    private static String generate(long seed, boolean offTags) {
+        final Random random = new Random(seed);
+        StringBuilder sb = new StringBuilder("package a;\nimport java.util.*;\n/** doc */\npublic class Big   implements Runnable{\nint first;\n");
+        for (int i = 0; sb.length() < 300 * 1024; i++) {
+            switch (random.nextInt(8)) {
+                case 0:
+                    sb.append("private int f").append(i).append("=  ").append(i).append(";  // trailing\n");
+                    break;
+                case 1:
+                    sb.append("    /** m").append(i).append(" */ public void m").append(i).append("(int a,String b){ if(a>0){System.out.println(b+a);}else   {  for(int k=0;k<a;k++) b+=k; }}\n\n\n\n");
+                    break;
+                case 2:
+                    sb.append("static class T").append(i).append("{ int x; /* inner */ class U{ void y(){} }\n enum E{A,B} }\n");
+                    break;
+                case 3:
+                    sb.append("/* before */\n@Override public String toString").append(i).append("() {return \"x\";}\n");
+                    break;
+                case 4:
+                    sb.append("void n").append(i).append("() {}\n// after\n");
+                    break;
+                case 5:
+                    if (offTags) {
+                        sb.append("// @formatter:off\nint   o").append(i).append("  =  1 ;\n// @formatter:on\n");
+                    } else {
+                        sb.append("int   o").append(i).append("  =  1 ;\n");
+                    }
+                    break;
+                case 6:
+                    sb.append("\t\t  static{ System.gc(); }\n  int g").append(i).append(";\n");
+                    break;
+                default:
+                    sb.append("long l").append(i).append(";\n");
+            }
+        }
+        sb.append("public void run(){}\n}\nclass Other{ int a; void b(){ }\n");
+        for (int i = 0; i < 500; i++) {
+            sb.append("  void o").append(i).append("(){int q = ").append(i).append("*2;}\n");
+        }
+        return sb.append("}\n").toString();
+    }
+}
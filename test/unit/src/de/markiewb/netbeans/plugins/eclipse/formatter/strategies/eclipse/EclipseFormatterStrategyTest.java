@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2013-2016 markiewb.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    markiewb - initial API and implementation and/or initial documentation
+ */
+package de.markiewb.netbeans.plugins.eclipse.formatter.strategies.eclipse;
+
+import de.markiewb.netbeans.plugins.eclipse.formatter.strategies.ParameterObject;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.swing.text.DefaultStyledDocument;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author markiewb
+ */
+public class EclipseFormatterStrategyTest {
+
+    private static final int BUDGET = 200;
+
+    @Test(timeout = 20000)
+    public void testSaveReturnsWithinBudgetWhenAllThreadsAreBusy() throws Exception {
+        final CountDownLatch running = new CountDownLatch(EclipseFormatterStrategy.THREADS);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Callable<List<TextDelta>> slow = new Callable<List<TextDelta>>() {
+
+            @Override
+            public List<TextDelta> call() throws Exception {
+                running.countDown();
+                release.await();
+                return Collections.emptyList();
+            }
+        };
+        final AtomicBoolean ran = new AtomicBoolean();
+        final Callable<List<TextDelta>> fast = new Callable<List<TextDelta>>() {
+
+            @Override
+            public List<TextDelta> call() {
+                ran.set(true);
+                return Collections.emptyList();
+            }
+        };
+        final List<Thread> saves = new ArrayList<>();
+        try {
+            for (int i = 0; i < EclipseFormatterStrategy.THREADS; i++) {
+                final Thread save = new Thread(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        try {
+                            EclipseFormatterStrategy.formatWithinBudget(slow, parameters(60000));
+                        } catch (Exception ex) {
+                            throw new IllegalStateException(ex);
+                        }
+                    }
+                });
+                save.start();
+                saves.add(save);
+            }
+            assertTrue("pool filled", running.await(10, TimeUnit.SECONDS));
+
+            final long start = System.nanoTime();
+            final List<TextDelta> deltas = EclipseFormatterStrategy.formatWithinBudget(fast, parameters(BUDGET));
+            final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            assertNull("abandoned", deltas);
+            assertTrue("returned after " + elapsed + " ms", elapsed < BUDGET + 500);
+        } finally {
+            release.countDown();
+            for (Thread save : saves) {
+                save.join();
+            }
+        }
+        //a save, which is submitted after the threads are free again, is not delayed by the abandoned one
+        assertNotNull(EclipseFormatterStrategy.formatWithinBudget(fast, parameters(10000)));
+        ran.set(false);
+        Thread.sleep(BUDGET);
+        assertFalse("abandoned formatting must not run later", ran.get());
+    }
+
+    private static ParameterObject parameters(int timeBudget) {
+        ParameterObject po = new ParameterObject();
+        po.styledDoc = new DefaultStyledDocument();
+        po.forSave = true;
+        po.timeBudget = timeBudget;
+        return po;
+    }
+}
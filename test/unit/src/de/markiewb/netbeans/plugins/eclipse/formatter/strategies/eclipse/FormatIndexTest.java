@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2013-2016 markiewb.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    markiewb - initial API and implementation and/or initial documentation
+ */
+package de.markiewb.netbeans.plugins.eclipse.formatter.strategies.eclipse;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author markiewb
+ */
+public class FormatIndexTest {
+
+    private static final long OLD = 1000000L;
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        File file = File.createTempFile("format", ".index");
+        try {
+            FormatIndex index = FormatIndex.open(file);
+            index.put("/a/A.java", 10, OLD, 1, 42, true);
+            index.put("/a/B.java", 20, OLD, 2, 42, false);
+            index.save();
+
+            FormatIndex read = FormatIndex.open(file);
+            assertEquals(2, read.size());
+            assertTrue(read.isFormatted("/a/A.java", 10, OLD, 42));
+            assertTrue(read.isFormatted("/a/A.java", 1, 42));
+            assertFalse("unformatted", read.isFormatted("/a/B.java", 20, OLD, 42));
+            assertFalse("other config", read.isFormatted("/a/A.java", 10, OLD, 43));
+            assertFalse("changed", read.isFormatted("/a/A.java", 11, OLD, 42));
+            assertFalse("unknown", read.isFormatted("/a/C.java", 1, 42));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testRecentModificationIsNotTrusted() {
+        FormatIndex index = FormatIndex.open(new File("does-not-exist.index"));
+        final long now = System.currentTimeMillis();
+        index.put("/a/A.java", 10, now, 1, 42, true);
+
+        assertFalse(index.isFormatted("/a/A.java", 10, now, 42));
+        assertTrue(index.isFormatted("/a/A.java", 1, 42));
+    }
+
+    @Test
+    public void testCorruptIndexIsEmpty() throws IOException {
+        File file = File.createTempFile("format", ".index");
+        try {
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                out.write(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17});
+            }
+            assertEquals(0, FormatIndex.open(file).size());
+        } finally {
+            file.delete();
+        }
+    }
+}
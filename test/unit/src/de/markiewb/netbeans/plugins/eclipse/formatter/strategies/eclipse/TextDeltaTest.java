@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2013-2016 markiewb.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    markiewb - initial API and implementation and/or initial documentation
+ */
+package de.markiewb.netbeans.plugins.eclipse.formatter.strategies.eclipse;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.ToolFactory;
+import org.eclipse.jdt.core.formatter.CodeFormatter;
+import org.eclipse.jdt.core.formatter.DefaultCodeFormatterConstants;
+import org.eclipse.jface.text.Document;
+import org.eclipse.text.edits.DeleteEdit;
+import org.eclipse.text.edits.InsertEdit;
+import org.eclipse.text.edits.MultiTextEdit;
+import org.eclipse.text.edits.ReplaceEdit;
+import org.eclipse.text.edits.TextEdit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author markiewb
+ */
+public class TextDeltaTest {
+
+    @Test
+    public void testReplacementIsTrimmed() {
+        List<TextDelta> deltas = TextDelta.of(new ReplaceEdit(0, 4, "a b"), "a  b");
+
+        assertEquals(1, deltas.size());
+        assertDelta(2, 1, "", deltas.get(0));
+    }
+
+    @Test
+    public void testEditsWithoutEffectAreSkipped() {
+        MultiTextEdit edit = new MultiTextEdit();
+        edit.addChild(new ReplaceEdit(0, 2, "ab"));
+        edit.addChild(new InsertEdit(2, ""));
+        edit.addChild(new DeleteEdit(3, 0));
+
+        assertTrue(TextDelta.of(edit, "abcd").isEmpty());
+        assertTrue(TextDelta.of(null, "abcd").isEmpty());
+    }
+
+    @Test
+    public void testDeltasAreInOrder() {
+        MultiTextEdit edit = new MultiTextEdit();
+        edit.addChild(new InsertEdit(0, "x"));
+        edit.addChild(new ReplaceEdit(1, 3, "bZd"));
+        edit.addChild(new DeleteEdit(5, 1));
+        final String original = "abcdef";
+
+        List<TextDelta> deltas = TextDelta.of(edit, original);
+
+        assertEquals(3, deltas.size());
+        assertDelta(0, 0, "x", deltas.get(0));
+        assertDelta(2, 1, "Z", deltas.get(1));
+        assertDelta(5, 1, "", deltas.get(2));
+        assertEquals("xabZde", TextDelta.apply(original, deltas));
+    }
+
+    @Test
+    public void testMapInsertAtAnchor() {
+        List<TextDelta> deltas = Arrays.asList(new TextDelta(2, 0, "xx"));
+
+        assertEquals(1, TextDelta.map(deltas, 1));
+        assertEquals("offset at the insert moves behind it", 4, TextDelta.map(deltas, 2));
+        assertEquals(5, TextDelta.map(deltas, 3));
+    }
+
+    @Test
+    public void testMapOffsetInsideReplacement() {
+        List<TextDelta> deltas = Arrays.asList(new TextDelta(2, 3, "y"), new TextDelta(7, 1, "zzz"));
+
+        assertEquals(1, TextDelta.map(deltas, 1));
+        assertEquals("start of the replacement", 3, TextDelta.map(deltas, 2));
+        assertEquals("inside the replacement", 3, TextDelta.map(deltas, 4));
+        assertEquals("end of the replacement", 3, TextDelta.map(deltas, 5));
+        assertEquals(4, TextDelta.map(deltas, 6));
+        assertEquals("behind both replacements", 8, TextDelta.map(deltas, 8));
+    }
+
+    @Test
+    public void testApplyEqualsFormatterEdits() throws Exception {
+        Map<String, String> settings = new HashMap<>(DefaultCodeFormatterConstants.getEclipseDefaultSettings());
+        settings.put(JavaCore.COMPILER_SOURCE, "1.7");
+        settings.put(JavaCore.COMPILER_COMPLIANCE, "1.7");
+        settings.put(JavaCore.COMPILER_CODEGEN_TARGET_PLATFORM, "1.7");
+        final CodeFormatter formatter = ToolFactory.createCodeFormatter(settings);
+        final String[] codes = {
+            "package a;\nclass A{int a  =1;\n\n\n\n  void b( ){ if(a>0){a++;}else   {a--;}}}\n",
+            "package a;\r\n/**   doc\r\n*/\r\npublic   class B {\r\n\tString s=\"x\"+\"y\";}",
+            "package a;\nclass C {\n    int c;\n}\n",};
+        for (String code : codes) {
+            final TextEdit edit = formatter.format(CodeFormatter.K_COMPILATION_UNIT | CodeFormatter.F_INCLUDE_COMMENTS, code, 0, code.length(), 0, code.contains("\r\n") ? "\r\n" : "\n");
+            assertNotNull(code, edit);
+            final Document document = new Document(code);
+            edit.copy().apply(document);
+
+            assertEquals(document.get(), TextDelta.apply(code, TextDelta.of(edit, code)));
+        }
+    }
+
+    private static void assertDelta(int offset, int length, String text, TextDelta delta) {
+        assertEquals("offset", offset, delta.offset);
+        assertEquals("length", length, delta.length);
+        assertEquals("text", text, delta.text);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2013-2016 markiewb.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    markiewb - initial API and implementation and/or initial documentation
+ */
+package de.markiewb.netbeans.plugins.eclipse.formatter.xml;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author markiewb
+ */
+public class ConfigReaderTest {
+
+    private static final int PROFILES = 5;
+
+    @Test
+    public void testReadProfileEqualsRead() throws Exception {
+        File file = createConfig();
+        try {
+            final ConfigReader reader = new ConfigReader();
+            List<Profile> all = reader.read(file);
+            assertEquals(PROFILES, all.size());
+            for (int index : new int[]{0, PROFILES / 2, PROFILES - 1}) {
+                Profile profile = reader.readProfile(file, "profile-" + index);
+                assertNotNull(profile);
+                assertEquals("profile-" + index, profile.getName());
+                assertEquals(all.get(index).getSettings(), profile.getSettings());
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testReadUnknownProfile() throws Exception {
+        File file = createConfig();
+        try {
+            assertNull(new ConfigReader().readProfile(file, "unknown"));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test(expected = ConfigReadException.class)
+    public void testReadInvalidXml() throws Exception {
+        File file = File.createTempFile("formatter", ".xml");
+        try {
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+                writer.write("<profiles><profile name=\"a\">");
+            }
+            new ConfigReader().read(file);
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static File createConfig() throws IOException {
+        File file = File.createTempFile("formatter", ".xml");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n");
+            writer.write("<profiles version=\"12\">\n");
+            for (int p = 0; p < PROFILES; p++) {
+                writer.write("<profile kind=\"CodeFormatterProfile\" name=\"profile-" + p + "\" version=\"12\">\n");
+                for (int s = 0; s < 10; s++) {
+                    writer.write("<setting id=\"org.eclipse.jdt.core.formatter.setting_" + s + "\" value=\"" + (p * 10 + s) + "\"/>\n");
+                }
+                writer.write("</profile>\n");
+            }
+            writer.write("</profiles>\n");
+        }
+        return file;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2013-2016 markiewb.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *    markiewb - initial API and implementation and/or initial documentation
+ */
+package de.markiewb.netbeans.plugins.eclipse.formatter.xml;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Properties;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author markiewb
+ */
+public class PreferencesReaderTest {
+
+    @Test
+    public void testEscapes() throws IOException {
+        Map<String, String> read = read("a\\ b=c\\td\n"
+                + "e\\:f=g\\nh\n"
+                + "unicode=\\u00e4\\u20AC\n"
+                + "backslash=x\\\\y\n"
+                + "other=\\q\n");
+        assertEquals("c\td", read.get("a b"));
+        assertEquals("g\nh", read.get("e:f"));
+        assertEquals("\u00e4\u20ac", read.get("unicode"));
+        assertEquals("x\\y", read.get("backslash"));
+        assertEquals("q", read.get("other"));
+    }
+
+    @Test
+    public void testContinuationsAndComments() throws IOException {
+        Map<String, String> read = read("# comment=1\n"
+                + "  ! comment=2\n"
+                + "\n"
+                + "list=a,\\\n"
+                + "    b,\\\n"
+                + "    c\n"
+                + "even=x\\\\\n"
+                + "next=y\n");
+        assertEquals(3, read.size());
+        assertEquals("a,b,c", read.get("list"));
+        assertEquals("x\\", read.get("even"));
+        assertEquals("y", read.get("next"));
+    }
+
+    @Test
+    public void testSeparators() throws IOException {
+        Map<String, String> read = read("a=1\n"
+                + "b : 2\n"
+                + "c 3\n"
+                + "d\n"
+                + "e = = 5\n");
+        assertEquals("1", read.get("a"));
+        assertEquals("2", read.get("b"));
+        assertEquals("3", read.get("c"));
+        assertEquals("", read.get("d"));
+        assertEquals("= 5", read.get("e"));
+    }
+
+    @Test
+    public void testPrefixAndOrder() throws IOException {
+        File file = write("org.eclipse.jdt.core.formatter.b=2\n"
+                + "eclipse.preferences.version=1\n"
+                + "org.eclipse.jdt.core.formatter.a=1\n");
+        try {
+            Map<String, String> read = new PreferencesReader().read(file, "org.eclipse.jdt.core.formatter.");
+            assertEquals("[b, a]", read.keySet().toString());
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Reads the content and checks, that the result equals the one of
+     * {@link Properties}.
+     */
+    private static Map<String, String> read(String content) throws IOException {
+        File file = write(content);
+        try {
+            Map<String, String> read = new PreferencesReader().read(file);
+            Properties properties = new Properties();
+            try (InputStream in = new FileInputStream(file)) {
+                properties.load(in);
+            }
+            assertEquals(properties, read);
+            return read;
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static File write(String content) throws IOException {
+        File file = File.createTempFile("preferences", ".prefs");
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(content.getBytes(StandardCharsets.ISO_8859_1));
+        }
+        return file;
+    }
+}